@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class AdaptiveIterationsSpec extends AbstractFuncSpec {
+
+    def "calibrates the iterations of benchmarks before executing them"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                adaptiveIterations = true
+                warmupIterations = 3
+                iterations = 4
+                warmup = '100ms'
+                timeOnIteration = '100ms'
+                fork = 1
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Calibrating 1 benchmarks')
+        result.output =~ /Running 1 benchmarks with \d warmup iterations, \d iterations/
+        benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.FAILED
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class AllocationBudgetsSpec extends AbstractFuncSpec {
+
+    def "fails when a benchmark allocates more than its budget"() {
+        given:
+        usingSample('java-project')
+        file('src/jmh/java/me/champeau/jmh/mixlang/AllocatingBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            import org.openjdk.jmh.annotations.Benchmark;
+
+            public class AllocatingBenchmark {
+                @Benchmark
+                public Object allocate() {
+                    return new byte[128];
+                }
+            }
+        '''
+        buildFile << """
+            jmh {
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+                allocationBudgets = ['.*sqrtBenchmark': 0, '.*allocate': 16]
+            }
+        """
+
+        when:
+        def result = buildAndFail('jmh')
+
+        then:
+        result.task(':jmh').outcome == FAILED
+        result.output.contains('AllocatingBenchmark.allocate (thrpt): allocates')
+        !result.output.contains('JavaBenchmark.sqrtBenchmark {a=a} (thrpt): allocates')
+
+        when:
+        buildFile << """
+            jmh {
+                allocationBudgets = ['.*sqrtBenchmark': 0, '.*allocate': 1024]
+            }
+        """
+        result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+    }
+}
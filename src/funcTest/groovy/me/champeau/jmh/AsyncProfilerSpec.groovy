@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.FAILED
+
+class AsyncProfilerSpec extends AbstractFuncSpec {
+
+    def "fails when the async-profiler library cannot be found"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                asyncProfilerLibrary = file('async-profiler')
+                asyncProfilerEvent = 'alloc'
+            }
+        """
+
+        when:
+        def result = buildAndFail('jmh')
+
+        then:
+        result.task(':jmh').outcome == FAILED
+        result.output.contains('Cannot find the async-profiler library at')
+    }
+}
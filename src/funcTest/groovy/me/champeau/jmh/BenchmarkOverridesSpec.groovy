@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.FAILED
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class BenchmarkOverridesSpec extends AbstractFuncSpec {
+
+    def "executes overridden benchmarks in their own JMH invocation"() {
+        given:
+        usingSample('java-project')
+        file('src/jmh/java/me/champeau/jmh/mixlang/MacroBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            import org.openjdk.jmh.annotations.Benchmark;
+
+            public class MacroBenchmark {
+                @Benchmark
+                public double macro() {
+                    return Math.sqrt(2.0);
+                }
+            }
+        '''
+        buildFile << """
+            jmh {
+                benchmarkOverrides {
+                    macro {
+                        include = '.*MacroBenchmark.*'
+                        fork = 1
+                        iterations = 2
+                        timeOnIteration = '200ms'
+                    }
+                }
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Running 1 benchmarks overridden by macro')
+        result.output.contains('Running 1 benchmarks without override')
+        benchmarksCsv.text.contains('MacroBenchmark.macro')
+        benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
+        benchmarksCsv.readLines().count { it.startsWith('"Benchmark"') } == 1
+    }
+
+    def "applies the first declared rule matching a benchmark"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                benchmarkOverrides {
+                    sqrt {
+                        include = '.*sqrtBenchmark.*'
+                        iterations = 2
+                    }
+                    all {
+                        include = '.*'
+                        iterations = 1
+                    }
+                }
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Running 1 benchmarks overridden by sqrt')
+        !result.output.contains('overridden by all')
+    }
+
+    def "cannot be combined with another execution mode"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                resultFormat = 'json'
+                scalability = true
+                benchmarkOverrides {
+                    sqrt {
+                        include = '.*sqrtBenchmark.*'
+                        iterations = 2
+                    }
+                }
+            }
+        """
+
+        when:
+        def result = buildAndFail('jmh')
+
+        then:
+        result.task(':jmh').outcome == FAILED
+        result.output.contains('The scalability and benchmarkOverrides options of task :jmh cannot be combined')
+    }
+}
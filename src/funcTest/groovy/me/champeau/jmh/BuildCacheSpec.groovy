@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.FROM_CACHE
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class BuildCacheSpec extends AbstractFuncSpec {
+
+    def "JMH jar and generated classes are loaded from the build cache"() {
+        given:
+        usingSample('java-project')
+        file('settings.gradle') << """
+            buildCache {
+                local {
+                    directory = file('build-cache')
+                }
+            }
+        """
+
+        when:
+        def result = build('jmhJar', '--build-cache')
+
+        then:
+        result.task(':jmhJar').outcome == SUCCESS
+        def firstJar = file('build/libs/java-project-jmh.jar').bytes
+
+        when:
+        build('clean')
+        result = build('jmhJar', '--build-cache')
+
+        then:
+        result.task(':jmhRunBytecodeGenerator').outcome == FROM_CACHE
+        result.task(':jmhCompileGeneratedClasses').outcome == FROM_CACHE
+        result.task(':jmhJar').outcome == FROM_CACHE
+        file('build/libs/java-project-jmh.jar').bytes == firstJar
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class CompareSpec extends AbstractFuncSpec {
+
+    def "fails when a benchmark regressed compared to the baseline"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+            }
+            tasks.named('jmhCompare') {
+                baselineFile = file('baseline.json')
+            }
+        """
+        build('jmh')
+        def results = new JsonSlurper().parse(file('build/reports/benchmarks.json'))
+        results.findAll { it.mode == 'thrpt' }.each {
+            // the baseline was 10 times faster
+            it.primaryMetric.score *= 10
+            it.primaryMetric.rawData = it.primaryMetric.rawData.collect { fork -> fork.collect { it * 10 } }
+        }
+        file('baseline.json').text = JsonOutput.toJson(results)
+
+        when:
+        def result = buildAndFail('jmhCompare')
+
+        then:
+        result.output.contains('regressed by more than 5.0%')
+        result.output.contains('JavaBenchmark.sqrtBenchmark (thrpt)')
+        file('build/reports/jmh/compare.txt').text.contains('REGRESSION')
+    }
+
+    def "reads the baseline from the build directory by default"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+            }
+        """
+        build('jmh')
+        file('build/jmh-baseline/results.json').text = file('build/reports/benchmarks.json').text
+
+        when:
+        def result = build('jmhCompare')
+
+        then:
+        result.task(':jmh') != null
+        result.task(':jmhCompare').outcome == SUCCESS
+        !file('build/reports/jmh/compare.txt').text.contains('REGRESSION')
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import spock.lang.Unroll
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+@Unroll
+class IncrementalBytecodeGenerationSpec extends AbstractFuncSpec {
+
+    private static final String GENERATED_PACKAGE = 'build/jmh-generated-sources/me/champeau/jmh/mixlang/jmh_generated'
+
+    def setup() {
+        usingSample('java-project')
+    }
+
+    def "only regenerates the benchmarks of changed classes (inProcess=#inProcess)"() {
+        given:
+        buildFile << """
+            jmh {
+                bytecodeGeneratorInProcess = $inProcess
+            }
+        """
+
+        when:
+        def result = build('jmhRunBytecodeGenerator')
+
+        then:
+        result.task(':jmhRunBytecodeGenerator').outcome == SUCCESS
+        def javaBenchmarkSource = file("$GENERATED_PACKAGE/JavaBenchmark_sqrtBenchmark_jmhTest.java")
+        javaBenchmarkSource.exists()
+
+        when: 'a benchmark class is added'
+        def lastModified = javaBenchmarkSource.lastModified()
+        // make sure that a regenerated file would get a different timestamp
+        Thread.sleep(1000)
+        file('src/jmh/java/me/champeau/jmh/mixlang/OtherBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            import org.openjdk.jmh.annotations.Benchmark;
+
+            public class OtherBenchmark {
+                @Benchmark
+                public double other() {
+                    return Math.sqrt(2.0);
+                }
+            }
+        '''
+        result = build('jmhRunBytecodeGenerator')
+
+        then:
+        result.task(':jmhRunBytecodeGenerator').outcome == SUCCESS
+        file("$GENERATED_PACKAGE/OtherBenchmark_other_jmhTest.java").exists()
+        javaBenchmarkSource.lastModified() == lastModified
+        benchmarkList.contains('JavaBenchmark')
+        benchmarkList.contains('OtherBenchmark')
+
+        when: 'the benchmark class is removed'
+        file('src/jmh/java/me/champeau/jmh/mixlang/OtherBenchmark.java').delete()
+        result = build('jmhRunBytecodeGenerator')
+
+        then:
+        result.task(':jmhRunBytecodeGenerator').outcome == SUCCESS
+        !file("$GENERATED_PACKAGE/OtherBenchmark_other_jmhTest.java").exists()
+        benchmarkList.contains('JavaBenchmark')
+        !benchmarkList.contains('OtherBenchmark')
+
+        where:
+        inProcess << [false, true]
+    }
+
+    def "regenerates inherited benchmarks when their superclass changes"() {
+        given:
+        buildFile << """
+            jmh {
+                includes = ['InheritedBenchmark']
+                benchmarkMode = ['ss']
+            }
+        """
+        def superclass = file('src/jmh/java/me/champeau/jmh/mixlang/AbstractBenchmark.java')
+        superclass << abstractBenchmark('Math.sqrt(2.0)')
+        file('src/jmh/java/me/champeau/jmh/mixlang/InheritedBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            public class InheritedBenchmark extends AbstractBenchmark {
+            }
+        '''
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        file("$GENERATED_PACKAGE/InheritedBenchmark_compute_jmhTest.java").exists()
+        benchmarkList.contains('InheritedBenchmark')
+
+        when: 'the superclass is changed'
+        superclass.text = abstractBenchmark('Math.cbrt(2.0)')
+        result = build('jmh')
+
+        then:
+        result.task(':jmhRunBytecodeGenerator').outcome == SUCCESS
+        result.task(':jmh').outcome == SUCCESS
+        file("$GENERATED_PACKAGE/InheritedBenchmark_compute_jmhTest.java").exists()
+        benchmarkList.contains('InheritedBenchmark')
+        file('build/reports/benchmarks.csv').text.contains('me.champeau.jmh.mixlang.InheritedBenchmark.compute')
+    }
+
+    private static String abstractBenchmark(String expression) {
+        """
+            package me.champeau.jmh.mixlang;
+
+            import org.openjdk.jmh.annotations.*;
+
+            @Fork(1)
+            @Warmup(iterations = 0)
+            @Measurement(iterations = 1)
+            public abstract class AbstractBenchmark {
+                @Benchmark
+                public double compute() {
+                    return $expression;
+                }
+            }
+        """
+    }
+
+    private String getBenchmarkList() {
+        file('build/jmh-generated-resources/META-INF/BenchmarkList').text
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import groovy.json.JsonSlurper
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class IncrementalRunSpec extends AbstractFuncSpec {
+
+    def "only executes the benchmarks affected by changes"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                incrementalRuns = true
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+            }
+        """
+        def results = file('build/reports/benchmarks.json')
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Running 1 of 1 benchmarks affected by changes')
+
+        when: 'a benchmark is added'
+        file('src/jmh/java/me/champeau/jmh/mixlang/OtherBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            import org.openjdk.jmh.annotations.Benchmark;
+
+            public class OtherBenchmark {
+                @Benchmark
+                public double other() {
+                    return Math.sqrt(2.0);
+                }
+            }
+        '''
+        result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Running 1 of 2 benchmarks affected by changes')
+        new JsonSlurper().parse(results)*.benchmark.toSet() == [
+                'me.champeau.jmh.mixlang.JavaBenchmark.sqrtBenchmark',
+                'me.champeau.jmh.mixlang.OtherBenchmark.other'
+        ] as Set
+
+        when: 'nothing changed'
+        result = build('jmh', '--rerun')
+
+        then:
+        result.output.contains('No benchmark is affected by changes, reusing the previous results')
+        new JsonSlurper().parse(results).size() == 4
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class JfrSpec extends AbstractFuncSpec {
+
+    def "summarizes the Flight Recorder recording of each benchmark"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                jfr = true
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Flight Recorder summaries of 2 benchmarks written to')
+        def summaries = file('build/results/jmh/jfr').listFiles().collect { new File(it, 'summary.txt') }
+        summaries.size() == 2
+        summaries.every { it.text.startsWith('GC pauses: ') }
+    }
+}
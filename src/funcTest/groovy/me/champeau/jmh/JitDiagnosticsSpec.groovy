@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class JitDiagnosticsSpec extends AbstractFuncSpec {
+
+    def "reports JIT diagnostics per benchmark"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                jitDiagnostics = true
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('JIT diagnostics of 2 benchmarks written to')
+        def report = file('build/results/jmh/jit/jit-report.txt')
+        report.text.contains('me.champeau.jmh.mixlang.JavaBenchmark.sqrtBenchmark {a=a} (thrpt)')
+        report.text.contains('me.champeau.jmh.mixlang.JavaBenchmark.sqrtBenchmark {a=a} (ss)')
+        file('build/results/jmh/jit').list().any { it.endsWith('.log') }
+    }
+}
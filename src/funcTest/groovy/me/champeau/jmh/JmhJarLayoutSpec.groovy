@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import spock.lang.Unroll
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+import static org.gradle.testkit.runner.TaskOutcome.UP_TO_DATE
+
+@Unroll
+class JmhJarLayoutSpec extends AbstractFuncSpec {
+
+    def setup() {
+        usingSample('java-project')
+    }
+
+    def "executes benchmarks without building the JMH jar"() {
+        given:
+        buildFile << """
+            jmh {
+                useJmhJar = false
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.task(':jmhJar') == null
+        benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
+    }
+
+    def "executes benchmarks from a thin JMH jar"() {
+        given:
+        buildFile << """
+            jmh {
+                thinJar = true
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmhJarLibraries').outcome == SUCCESS
+        result.task(':jmh').outcome == SUCCESS
+        file('build/libs/lib').listFiles().any { it.name.startsWith('jmh-core') }
+        benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
+
+        when:
+        result = build('jmhJar')
+
+        then:
+        result.task(':jmhJarLibraries').outcome == UP_TO_DATE
+        result.task(':jmhJar').outcome == UP_TO_DATE
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import groovy.json.JsonSlurper
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class MatrixSpec extends AbstractFuncSpec {
+
+    def "compares the results of the JVM flag sets of the matrix"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+                matrix {
+                    jvmFlagSets = [serial: ['-XX:+UseSerialGC'], parallel: ['-XX:+UseParallelGC']]
+                }
+            }
+        """
+
+        when:
+        def result = build('jmhMatrix')
+
+        then:
+        result.task(':jmhSerial').outcome == SUCCESS
+        result.task(':jmhParallel').outcome == SUCCESS
+        result.task(':jmhMatrix').outcome == SUCCESS
+        result.task(':jmh') == null
+        file('build/results/jmhSerial/results.json').isFile()
+        file('build/reports/jmh/matrix.txt').text.readLines()[0] ==~ /Benchmark\s+Unit\s+serial\s+parallel/
+        new JsonSlurper().parse(file('build/reports/jmh/matrix.json'))*.variant.unique() == ['serial', 'parallel']
+    }
+}
@@ -60,5 +60,30 @@ class MultiLanguageSpec extends AbstractFuncSpec {
         result.task(":jmh").outcome == SUCCESS
         benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
         benchmarksCsv.text.contains('GroovyBenchmark.sqrtBenchmark')
+
+        and: 'the benchmark lists generated for each classes directory are merged'
+        def benchmarkList = file('build/jmh-generated-resources/META-INF/BenchmarkList').readLines()
+        benchmarkList.size() == 2
+        benchmarkList == benchmarkList.toSorted()
+    }
+
+    def "Executes benchmarks with multiple languages using the in-process bytecode generator"() {
+
+        given:
+        usingSample("mixed-language-project")
+        buildFile << """
+            jmh {
+                bytecodeGeneratorInProcess = true
+            }
+        """
+
+        when:
+        def result = build("jmh")
+
+        then:
+        result.task(":jmhRunBytecodeGenerator").outcome == SUCCESS
+        result.task(":jmh").outcome == SUCCESS
+        benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
+        benchmarksCsv.text.contains('GroovyBenchmark.sqrtBenchmark')
     }
 }
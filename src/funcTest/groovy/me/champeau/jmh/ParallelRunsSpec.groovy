@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import spock.lang.Requires
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+@Requires({ Runtime.runtime.availableProcessors() >= 2 })
+class ParallelRunsSpec extends AbstractFuncSpec {
+
+    @Requires({ ['taskset', 'numactl'].any { cmd -> System.getenv('PATH')?.split(File.pathSeparator)?.any { new File(it, cmd).canExecute() } } })
+    def "executes benchmarks concurrently on disjoint CPU sets"() {
+        given:
+        usingSample('java-project')
+        file('src/jmh/java/me/champeau/jmh/mixlang/OtherBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            import org.openjdk.jmh.annotations.Benchmark;
+
+            public class OtherBenchmark {
+                @Benchmark
+                public double other() {
+                    return Math.sqrt(2.0);
+                }
+            }
+        '''
+        buildFile << """
+            jmh {
+                parallelRuns = 2
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Running 1 benchmarks on ')
+        def lines = benchmarksCsv.readLines()
+        lines.count { it.startsWith('"Benchmark"') } == 1
+        lines.any { it.contains('JavaBenchmark.sqrtBenchmark') }
+        lines.any { it.contains('OtherBenchmark.other') }
+    }
+}
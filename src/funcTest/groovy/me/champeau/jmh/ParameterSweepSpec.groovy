@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import groovy.json.JsonSlurper
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class ParameterSweepSpec extends AbstractFuncSpec {
+
+    def "sweeps a sample of the parameter space"() {
+        given:
+        usingSample('java-project')
+        file('src/jmh/java/me/champeau/jmh/mixlang/SweptBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            import org.openjdk.jmh.annotations.*;
+
+            @State(Scope.Benchmark)
+            @Fork(1)
+            @Warmup(iterations = 0)
+            @Measurement(iterations = 1, time = 100, timeUnit = java.util.concurrent.TimeUnit.MILLISECONDS)
+            public class SweptBenchmark {
+                @Param({"1"})
+                int size;
+
+                @Param({"1"})
+                int factor;
+
+                @Param({"x"})
+                String mode;
+
+                @Benchmark
+                public double compute() {
+                    double sum = 0;
+                    for (int i = 0; i < size * factor; i++) {
+                        sum += Math.sqrt(i);
+                    }
+                    return sum;
+                }
+            }
+        '''
+        buildFile << """
+            jmh {
+                includes = ['SweptBenchmark']
+                benchmarkMode = ['avgt']
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+                benchmarkParameters = [size: ['10', '100', '1000'], factor: ['1', '2', '3'], mode: ['x', 'y']]
+                parameterSweep = 'pairwise'
+                sweepRefinements = 1
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Sweeping 9 of 18 parameter configurations')
+        def configurations = new JsonSlurper().parse(file('build/reports/benchmarks.json'))*.params
+        configurations.size() == (configurations as Set).size()
+        configurations.size() > 9 && configurations.size() < 18
+        file('build/reports/benchmarks-sweep.txt').text.contains('Mean score per value:')
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import groovy.json.JsonSlurper
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class PartialResultsSpec extends AbstractFuncSpec {
+
+    def "reports progress and writes partial results while benchmarks run"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                fork = 1
+                iterations = 2
+                humanOutputFile = file('build/reports/human.txt')
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('complete, ETA')
+        def records = file('build/results/jmh/partial-results.jsonl').readLines().collect { new JsonSlurper().parseText(it) }
+        records.size() == 4
+        records.every { it.benchmark == 'me.champeau.jmh.mixlang.JavaBenchmark.sqrtBenchmark' && it.params == [a: 'a'] }
+        records*.mode.toSet() == ['thrpt', 'ss'] as Set
+        file('build/reports/human.txt').text.contains('Iteration   2:')
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.FAILED
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class ProfilersSpec extends AbstractFuncSpec {
+
+    def "summarizes the secondary metrics of profilers next to the results"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+                profilers = ['gc']
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        def summary = file('build/reports/benchmarks-profilers.txt').readLines()
+        summary[0].startsWith('Benchmark')
+        summary[0].contains('gc.alloc.rate.norm (B/op)')
+        summary.any { it.startsWith('me.champeau.jmh.mixlang.JavaBenchmark.sqrtBenchmark {a=a} (thrpt)') }
+    }
+
+    def "fails on unknown profilers when the project is configured"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                profilers = ['gcc']
+            }
+        """
+
+        when:
+        def result = buildAndFail('help')
+
+        then:
+        result.output.contains("Unknown JMH profiler 'gcc'")
+    }
+
+    def "warns about profiler classes missing from the classpath"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                profilers = ['org.acme.MissingProfiler']
+            }
+        """
+
+        when:
+        def result = buildAndFail('jmh')
+
+        then:
+        result.task(':jmh').outcome == FAILED
+        result.output.contains("Profiler class 'org.acme.MissingProfiler' is not found on the classpath of the benchmarks")
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class ResultsStoreSpec extends AbstractFuncSpec {
+
+    def "appends the results of every run to the results store"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+                resultsStore = file('build/results/store')
+            }
+        """
+
+        when:
+        build('jmh')
+        def result = build('jmh', '--rerun')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        file('build/results/store/results.jsonl').readLines().count { it.contains('JavaBenchmark.sqrtBenchmark') } == 4
+        file('build/results/store/benchmarks.txt').readLines() == ['me.champeau.jmh.mixlang.JavaBenchmark.sqrtBenchmark']
+        file('build/results/store/index').listFiles()*.readLines()*.size() == [4]
+
+        when:
+        result = build('jmhHistory', '--benchmark=sqrt', '--last=1')
+
+        then:
+        result.output.contains('me.champeau.jmh.mixlang.JavaBenchmark.sqrtBenchmark (thrpt) {a=a}')
+        result.output.contains('me.champeau.jmh.mixlang.JavaBenchmark.sqrtBenchmark (ss) {a=a}')
+    }
+
+    def "does not store results when no results store is configured"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        !file('build/results/store').exists()
+    }
+}
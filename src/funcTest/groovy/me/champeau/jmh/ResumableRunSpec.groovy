@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.FAILED
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class ResumableRunSpec extends AbstractFuncSpec {
+
+    def "resumes an interrupted run from the first class of benchmarks which didn't complete"() {
+        given:
+        usingPreemptedBenchmark()
+
+        when:
+        def result = buildAndFail('jmh')
+
+        then:
+        result.task(':jmh').outcome == FAILED
+        result.output.contains('Running benchmarks of me.champeau.jmh.mixlang.JavaBenchmark')
+
+        when:
+        file('preempted').delete()
+        result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Reusing the checkpointed results of benchmarks of me.champeau.jmh.mixlang.JavaBenchmark')
+        result.output.contains('Running benchmarks of me.champeau.jmh.mixlang.PreemptedBenchmark')
+        benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
+        benchmarksCsv.text.contains('PreemptedBenchmark.run')
+    }
+
+    def "executes again the benchmarks which changed since the interrupted run"() {
+        given:
+        usingPreemptedBenchmark()
+        def javaBenchmark = file('src/jmh/java/me/champeau/gradle/jmh/mixlang/JavaBenchmark.java')
+
+        when:
+        def result = buildAndFail('jmh')
+
+        then:
+        result.task(':jmh').outcome == FAILED
+        result.output.contains('Running benchmarks of me.champeau.jmh.mixlang.JavaBenchmark')
+
+        when: 'the body of the completed benchmark changes'
+        file('preempted').delete()
+        javaBenchmark.text = javaBenchmark.text.replace('Math.sqrt(value)', 'Math.cbrt(value)')
+        result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        !result.output.contains('Reusing the checkpointed results')
+        result.output.contains('Running benchmarks of me.champeau.jmh.mixlang.JavaBenchmark')
+        result.output.contains('Running benchmarks of me.champeau.jmh.mixlang.PreemptedBenchmark')
+    }
+
+    private void usingPreemptedBenchmark() {
+        usingSample('java-project')
+        file('src/jmh/java/me/champeau/jmh/mixlang/PreemptedBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            import java.io.File;
+            import org.openjdk.jmh.annotations.Benchmark;
+
+            public class PreemptedBenchmark {
+                @Benchmark
+                public double run() {
+                    if (new File("preempted").exists()) {
+                        throw new IllegalStateException("preempted");
+                    }
+                    return Math.sqrt(2.0);
+                }
+            }
+        '''
+        file('preempted').text = ''
+        buildFile << """
+            jmh {
+                resumable = true
+            }
+        """
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import groovy.json.JsonSlurper
+
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class ScalabilitySpec extends AbstractFuncSpec {
+
+    def "reports the scalability of benchmarks across thread counts"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                benchmarkMode = ['thrpt']
+                resultFormat = 'json'
+                resultsFile = file('build/reports/benchmarks.json')
+                scalability = true
+                scalabilityThreads = [1, 2, 3]
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Running 1 benchmarks with 3 threads')
+        new JsonSlurper().parse(file('build/reports/benchmarks.json'))*.threads == [1, 2, 3]
+        def report = file('build/reports/benchmarks-scalability.txt').text
+        report.contains('me.champeau.jmh.mixlang.JavaBenchmark.sqrtBenchmark (thrpt) {a=a}, throughput in ops/ms')
+        report.contains('Universal Scalability Law: contention (sigma)')
+    }
+}
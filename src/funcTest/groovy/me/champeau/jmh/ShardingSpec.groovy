@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.FAILED
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class ShardingSpec extends AbstractFuncSpec {
+
+    def setup() {
+        usingSample('java-project')
+        file('src/jmh/java/me/champeau/jmh/mixlang/OtherBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            import org.openjdk.jmh.annotations.Benchmark;
+
+            public class OtherBenchmark {
+                @Benchmark
+                public double other() {
+                    return Math.sqrt(2.0);
+                }
+            }
+        '''
+    }
+
+    def "executes the benchmarks of a single shard"() {
+        when:
+        def result = build('jmh', '--shardIndex=0', '--shardCount=2')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains('Running 1 benchmarks in shard 0 of 2')
+        benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
+        !benchmarksCsv.text.contains('OtherBenchmark.other')
+
+        when:
+        result = build('jmh', '--shardIndex=1', '--shardCount=2')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        !benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
+        benchmarksCsv.text.contains('OtherBenchmark.other')
+    }
+
+    def "skips shards without benchmarks"() {
+        when:
+        def result = build('jmh', '--shardIndex=2', '--shardCount=3')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        result.output.contains("Shard 2 of 3 doesn't contain any benchmark")
+    }
+
+    def "rejects a shard index without a shard count"() {
+        when:
+        def result = buildAndFail('jmh', '--shardIndex=1')
+
+        then:
+        result.task(':jmh').outcome == FAILED
+        result.output.contains('A shard count must be set when the shard index is set')
+    }
+}
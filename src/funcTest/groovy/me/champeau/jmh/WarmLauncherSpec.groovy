@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh
+
+import static org.gradle.testkit.runner.TaskOutcome.FAILED
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+
+class WarmLauncherSpec extends AbstractFuncSpec {
+
+    def "executes the latest benchmarks in the warm launcher"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                warmLauncher = true
+            }
+        """
+
+        when:
+        def result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        benchmarksCsv.text.contains('JavaBenchmark.sqrtBenchmark')
+
+        when: 'a benchmark is added and benchmarks are executed again'
+        file('src/jmh/java/me/champeau/jmh/mixlang/OtherBenchmark.java') << '''
+            package me.champeau.jmh.mixlang;
+
+            import org.openjdk.jmh.annotations.Benchmark;
+
+            public class OtherBenchmark {
+                @Benchmark
+                public double other() {
+                    return Math.sqrt(2.0);
+                }
+            }
+        '''
+        result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+        benchmarksCsv.text.contains('OtherBenchmark.other')
+    }
+
+    def "reports invalid JMH arguments without stopping the warm launcher"() {
+        given:
+        usingSample('java-project')
+        buildFile << """
+            jmh {
+                warmLauncher = true
+            }
+        """
+
+        when:
+        def result = buildAndFail('jmh', '--jmhArgs=-notAnOption')
+
+        then:
+        result.task(':jmh').outcome == FAILED
+        result.output.contains('Invalid JMH arguments')
+
+        when:
+        result = build('jmh')
+
+        then:
+        result.task(':jmh').outcome == SUCCESS
+    }
+}
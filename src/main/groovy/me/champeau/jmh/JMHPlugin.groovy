@@ -27,9 +27,11 @@ import org.gradle.api.file.FileCopyDetails
 import org.gradle.api.plugins.JavaPlugin
 import org.gradle.api.plugins.JavaPluginExtension
 import org.gradle.api.provider.Provider
+import org.gradle.api.tasks.ClasspathNormalizer
 import org.gradle.api.tasks.TaskProvider
 import org.gradle.api.tasks.bundling.Jar
 import org.gradle.api.tasks.compile.JavaCompile
+import org.gradle.jvm.toolchain.JavaLanguageVersion
 import org.gradle.jvm.toolchain.JavaToolchainService
 import org.gradle.plugins.ide.eclipse.EclipsePlugin
 import org.gradle.plugins.ide.eclipse.EclipseWtpPlugin
@@ -50,13 +52,17 @@ class JMHPlugin implements Plugin<Project> {
     static final String JMH_GROUP = 'jmh'
     static final String JMH_NAME = 'jmh'
     static final String JMH_JAR_TASK_NAME = 'jmhJar'
+    static final String JMH_LIBRARIES_TASK_NAME = 'jmhJarLibraries'
+    static final String JMH_HISTORY_TASK_NAME = 'jmhHistory'
+    static final String JMH_COMPARE_TASK_NAME = 'jmhCompare'
+    static final String JMH_MATRIX_TASK_NAME = 'jmhMatrix'
     static final String JMH_TASK_COMPILE_GENERATED_CLASSES_NAME = 'jmhCompileGeneratedClasses'
     static final String JHM_RUNTIME_CLASSPATH_CONFIGURATION = 'jmhRuntimeClasspath'
 
     void apply(Project project) {
         assertMinimalGradleVersion()
         project.plugins.apply(JavaPlugin)
-        final JmhParameters extension = project.extensions.create(JMH_NAME, JmhParameters)
+        final JmhExtension extension = project.extensions.create(JMH_NAME, JmhExtension)
         DefaultsConfigurer.configureDefaults(extension, project)
         final Configuration configuration = project.configurations.create(JMH_NAME)
 
@@ -89,25 +95,122 @@ class JMHPlugin implements Plugin<Project> {
             jmhJar = createStandardJmhJar(project, extension, metaInfExcludes, jmhGeneratedResourcesDir, jmhGeneratedClassesDir, runtimeConfiguration)
         }
 
+        def revision = project.providers.of(GitRevisionValueSource) {
+            it.parameters.workingDirectory.set(project.layout.projectDirectory)
+        }
         project.tasks.withType(JMHTask).configureEach {
             DefaultsConfigurer.configureConvention(extension, it)
-            usesService(ConcurrentExecutionControlBuildService.restrict(JMHTask, project.gradle))
+            it.revision.convention(revision)
+            // registered when tasks are realized, so that the budgets of the build script are known
+            def executionControl = ConcurrentExecutionControlBuildService.restrict(JMHTask, project.gradle, project.toString(), extension.cpuBudget, extension.memoryBudget)
+            it.executionControl.convention(executionControl)
+            usesService(executionControl)
+            def cpuSets = CpuSetService.register(project.gradle)
+            it.cpuSetService.convention(cpuSets)
+            usesService(cpuSets)
         }
 
-        project.tasks.register(JMH_NAME, JMHTask) {
+        def configureJmhTask = { JMHTask it ->
             it.group = JMH_GROUP
             it.jmhClasspath.from(configuration)
             it.testRuntimeClasspath.from(runtimeConfiguration)
-            it.jarArchive.set(jmhJar.flatMap { it.archiveFile })
+            if (extension.useJmhJar.get()) {
+                it.jarArchive.set(jmhJar.flatMap { it.archiveFile })
+            } else {
+                it.benchmarkClasspath.from(runtimeBytecodeGeneratorTask.flatMap { it.generatedResourcesDir })
+                it.benchmarkClasspath.from(jmhCompileGenerated.flatMap { it.destinationDirectory })
+                it.benchmarkClasspath.from(project.sourceSets.jmh.output)
+                it.benchmarkClasspath.from(project.sourceSets.main.output)
+                if (extension.includeTests.get()) {
+                    it.benchmarkClasspath.from(project.sourceSets.test.output)
+                }
+            }
+            it.benchmarkList.convention(runtimeBytecodeGeneratorTask.flatMap {
+                it.generatedResourcesDir.file(BenchmarkListFile.BENCHMARK_LIST)
+            })
+            it.classesDirs.from(project.sourceSets.jmh.output.classesDirs)
+            it.classesDirs.from(project.sourceSets.main.output.classesDirs)
+            if (extension.includeTests.get()) {
+                it.classesDirs.from(project.sourceSets.test.output.classesDirs)
+            }
             it.resultsFile.convention(extension.resultsFile)
             it.humanOutputFile.convention(extension.humanOutputFile)
             it.javaLauncher.convention(toolchainService.launcherFor(java.toolchain))
         }
+        project.tasks.register(JMH_NAME, JMHTask, configureJmhTask)
+        registerMatrixTasks(project, extension, toolchainService, configureJmhTask)
+
+        project.tasks.register(JMH_COMPARE_TASK_NAME, JmhCompareTask) {
+            it.group = JMH_GROUP
+            it.description = 'Compares the benchmark results with the results of a baseline.'
+            // depends on the jmh task, which executes the benchmarks unless its results are up-to-date
+            it.resultsFile.convention(project.tasks.named(JMH_NAME, JMHTask).flatMap { it.resultsFile })
+            it.baselineFile.convention(project.layout.buildDirectory.file("jmh-baseline/results.json"))
+            it.threshold.convention(0.05d)
+            it.failOnRegression.convention(true)
+            it.reportFile.convention(project.layout.buildDirectory.file("reports/jmh/compare.txt"))
+        }
+
+        project.tasks.register(JMH_HISTORY_TASK_NAME, JmhHistoryTask) {
+            it.group = JMH_GROUP
+            it.description = 'Displays the history of the benchmark results recorded in the results store.'
+            it.resultsStore.convention(extension.resultsStore)
+        }
 
         configureKotlin(project)
         configureIDESupport(project)
     }
 
+    /**
+     * Registers the task comparing the variants of the matrix, and a JMH task for each combination of a Java
+     * version and a JVM flag set of the matrix, writing results in its own directory. The names of the variant
+     * tasks depend on the matrix, so they are registered once the project is evaluated, and the matrix cannot
+     * be changed afterwards.
+     */
+    private static void registerMatrixTasks(Project project, JmhExtension extension, JavaToolchainService toolchainService,
+                                            Closure configureJmhTask) {
+        def matrixTask = project.tasks.register(JMH_MATRIX_TASK_NAME, JmhMatrixTask) {
+            it.group = JMH_GROUP
+            it.description = 'Compares the benchmark results of the variants of the matrix.'
+            it.mergedResultsFile.convention(project.layout.buildDirectory.file("reports/jmh/matrix.json"))
+            it.reportFile.convention(project.layout.buildDirectory.file("reports/jmh/matrix.txt"))
+        }
+        project.afterEvaluate {
+            extension.matrix.javaVersions.finalizeValue()
+            extension.matrix.jvmFlagSets.finalizeValue()
+            List<Integer> javaVersions = extension.matrix.javaVersions.getOrElse([])
+            Map<String, List<String>> jvmFlagSets = extension.matrix.jvmFlagSets.getOrElse([:])
+            if (javaVersions.isEmpty() && jvmFlagSets.isEmpty()) {
+                return
+            }
+            List<Integer> versions = javaVersions.isEmpty() ? [null] : javaVersions
+            List<String> flagSets = jvmFlagSets.isEmpty() ? [null] : jvmFlagSets.keySet() as List<String>
+            Map<String, TaskProvider<JMHTask>> tasks = [:]
+            versions.each { Integer version ->
+                flagSets.each { String flagSet ->
+                    def parts = (version == null ? [] : ["java${version}".toString()]) + (flagSet == null ? [] : [flagSet])
+                    String variant = parts.join('-')
+                    tasks[variant] = project.tasks.register(JMH_NAME + parts.collect { it.capitalize() }.join(''), JMHTask) {
+                        configureJmhTask(it)
+                        DefaultsConfigurer.configureOutputLocations(it, project)
+                        it.humanOutputFile.set((File) null)
+                        it.description = "Runs the benchmarks of the ${variant} variant of the matrix."
+                        if (version != null) {
+                            it.javaLauncher.set(toolchainService.launcherFor { it.languageVersion.set(JavaLanguageVersion.of(version)) })
+                        }
+                        if (flagSet != null) {
+                            List<String> flags = jvmFlagSets[flagSet]
+                            it.jvmArgsAppend.set(extension.jvmArgsAppend.orElse([]).map { it + flags })
+                        }
+                    }
+                }
+            }
+            matrixTask.configure {
+                tasks.each { variant, task -> it.resultsFiles.put(variant, task.flatMap { it.resultsFile }) }
+            }
+        }
+    }
+
     private static void assertMinimalGradleVersion() {
         if (!IS_GRADLE_MIN) {
             throw new RuntimeException("This version of the JMH Gradle plugin requires ${GRADLE_MIN.version}+, you are using ${GradleVersion.current().version}. Please upgrade Gradle or use an older version of the JMH Gradle plugin.")
@@ -157,7 +260,7 @@ class JMHPlugin implements Plugin<Project> {
     private static TaskProvider<JavaCompile> createJmhCompileGeneratedClassesTask(Project project,
                                                                                   Provider<Directory> jmhGeneratedSourcesDir,
                                                                                   Provider<Directory> jmhGeneratedClassesDir,
-                                                                                  JmhParameters extension,
+                                                                                  JmhExtension extension,
                                                                                   JavaPluginExtension java,
                                                                                   JavaToolchainService toolchainService) {
         project.tasks.register(JMH_TASK_COMPILE_GENERATED_CLASSES_NAME, JavaCompile) {
@@ -176,7 +279,7 @@ class JMHPlugin implements Plugin<Project> {
 
     private static TaskProvider<JmhBytecodeGeneratorTask> createJmhRunBytecodeGeneratorTask(Project project,
                                                                                             Provider<Directory> jmhGeneratedSourcesDir,
-                                                                                            JmhParameters extension,
+                                                                                            JmhExtension extension,
                                                                                             Provider<Directory> jmhGeneratedResourcesDir,
                                                                                             JavaPluginExtension java,
                                                                                             JavaToolchainService toolchainService) {
@@ -193,6 +296,7 @@ class JMHPlugin implements Plugin<Project> {
                 it.classesDirsToProcess.from(project.sourceSets.test.output.classesDirs)
             }
             it.javaLauncher.convention(toolchainService.launcherFor(java.toolchain))
+            it.inProcess.convention(extension.bytecodeGeneratorInProcess)
         }
     }
 
@@ -214,7 +318,7 @@ class JMHPlugin implements Plugin<Project> {
 
     }
 
-    private TaskProvider<Jar> createShadowJmhJar(Project project, JmhParameters extension,
+    private TaskProvider<Jar> createShadowJmhJar(Project project, JmhExtension extension,
                                                  Provider<Directory> jmhGeneratedResourcesDir,
                                                  Provider<Directory> jmhGeneratedClassesDir,
                                                  List<String> metaInfExcludes,
@@ -241,9 +345,6 @@ class JMHPlugin implements Plugin<Project> {
                 processLibs runtimeConfiguration.files
                 processLibs shadowConfiguration.files
 
-                if (extension.includeTests.get()) {
-                    task.from(testSourceSetOutput)
-                }
                 task.eachFile { FileCopyDetails f ->
                     if (f.name.endsWith('.class')) {
                         f.setDuplicatesStrategy(extension.duplicateClassesStrategy.get())
@@ -254,36 +355,64 @@ class JMHPlugin implements Plugin<Project> {
             it.from(project.sourceSets.main.output)
             it.from(project.file(jmhGeneratedClassesDir))
             it.from(project.file(jmhGeneratedResourcesDir))
+            // added when configuring the task, so that the test classes are part of its cache key
+            if (extension.includeTests.get()) {
+                it.from(testSourceSetOutput)
+            }
 
             it.exclude(metaInfExcludes)
             it.configurations = []
             it.zip64 = extension.zip64.get()
+            it.preserveFileTimestamps = false
+            it.reproducibleFileOrder = true
         } as TaskProvider<Jar>
     }
 
     private TaskProvider<Jar> createStandardJmhJar(Project project,
-                                                   JmhParameters extension,
+                                                   JmhExtension extension,
                                                    List<String> metaInfExcludes,
                                                    Provider<Directory> jmhGeneratedResourcesDir,
                                                    Provider<Directory> jmhGeneratedClassesDir,
                                                    Configuration runtimeConfiguration) {
+        def jmhLibraries = project.tasks.register(JMH_LIBRARIES_TASK_NAME, JmhLibrariesTask) {
+            it.group = JMH_GROUP
+            it.libraries.from(runtimeConfiguration)
+            it.destinationDirectory.convention(project.tasks.named(JMH_JAR_TASK_NAME, Jar).flatMap {
+                it.destinationDirectory.dir(JmhLibrariesTask.LIBRARIES_DIRECTORY)
+            })
+        }
         project.tasks.register(JMH_JAR_TASK_NAME, Jar) {
             def archives = project.objects.newInstance(ServiceInjection).archiveOperations
             it.group = JMH_GROUP
             it.dependsOn JMH_TASK_COMPILE_GENERATED_CLASSES_NAME
-            it.inputs.files project.sourceSets.jmh.output
-            it.inputs.files project.sourceSets.main.output
+            it.inputs.files(project.sourceSets.jmh.output).withNormalizer(ClasspathNormalizer)
+            it.inputs.files(project.sourceSets.main.output).withNormalizer(ClasspathNormalizer)
             it.duplicatesStrategy = extension.duplicateClassesStrategy.get()
             if (extension.includeTests.get()) {
-                it.inputs.files project.sourceSets.test.output
+                it.inputs.files(project.sourceSets.test.output).withNormalizer(ClasspathNormalizer)
+            }
+            if (extension.thinJar.get()) {
+                // only directories of the runtime classpath are packaged, jars are referenced from the manifest
+                it.dependsOn jmhLibraries
+                it.from(runtimeConfiguration.elements.map {
+                    it.collect { it.asFile }.findAll { it.directory } as Set
+                }).exclude(metaInfExcludes)
+                def classPath = runtimeConfiguration.elements.map {
+                    JmhLibrariesTask.manifestClassPath(it.collect { it.asFile })
+                }
+                it.inputs.property('manifestClassPath', classPath)
+                it.doFirst { Jar jar ->
+                    jar.manifest.attributes('Class-Path': classPath.get())
+                }
+            } else {
+                it.from(runtimeConfiguration.elements.map {
+                    it.collect { it.asFile }
+                            .findAll { it.directory || it.name.toLowerCase().endsWith('.jar') }
+                            .collect {
+                                it.directory ? it : archives.zipTree(it)
+                            } as Set
+                }).exclude(metaInfExcludes)
             }
-            it.from(runtimeConfiguration.elements.map {
-                it.collect { it.asFile }
-                        .findAll { it.directory || it.name.toLowerCase().endsWith('.jar') }
-                        .collect {
-                            it.directory ? it : archives.zipTree(it)
-                        } as Set
-            }).exclude(metaInfExcludes)
             def jmhSourceSetOutput = project.sourceSets.jmh.output
             def mainSourceSetOutput = project.sourceSets.main.output
             def testSourceSetOutput = project.sourceSets.test.output
@@ -302,11 +431,16 @@ class JMHPlugin implements Plugin<Project> {
 
             it.archiveClassifier = JMH_NAME
             it.zip64 = extension.zip64.get()
+            // entries without timestamps and in a stable order make the jar reproducible, so that it
+            // can be loaded from the build cache instead of being built again on every machine
+            it.preserveFileTimestamps = false
+            it.reproducibleFileOrder = true
+            it.outputs.cacheIf('the JMH jar is reproducible') { true }
         }
     }
 
     private void registerBuildListener(
-            final Project project, final JmhParameters extension) {
+            final Project project, final JmhExtension extension) {
         project.afterEvaluate {
             if (extension.includeTests.get()) {
                 project.sourceSets {
@@ -320,7 +454,7 @@ class JMHPlugin implements Plugin<Project> {
     }
 
     @CompileStatic
-    private static Configuration configureJmhRuntimeClasspathConfiguration(Project project, JmhParameters extension) {
+    private static Configuration configureJmhRuntimeClasspathConfiguration(Project project, JmhExtension extension) {
         def newConfig = project.configurations.findByName(JHM_RUNTIME_CLASSPATH_CONFIGURATION)
         newConfig.setCanBeConsumed(false)
         newConfig.setVisible(false)
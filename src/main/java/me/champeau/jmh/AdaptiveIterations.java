@@ -0,0 +1,196 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonSlurper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Computes the number of warmup and measurement iterations each benchmark needs, from the scores of a
+ * calibration run executing every iteration as a measurement iteration. Warmup stops once the coefficient of
+ * variation of the following iterations falls under a target, and measurement stops once the confidence
+ * interval of the score is tight enough.
+ */
+class AdaptiveIterations {
+    private final int minWarmupIterations;
+    private final int maxWarmupIterations;
+    private final int minIterations;
+    private final int maxIterations;
+    private final double warmupCv;
+    private final double precision;
+
+    AdaptiveIterations(int minWarmupIterations, int maxWarmupIterations, int minIterations, int maxIterations,
+                       double warmupCv, double precision) {
+        this.minWarmupIterations = Math.min(minWarmupIterations, maxWarmupIterations);
+        this.maxWarmupIterations = maxWarmupIterations;
+        this.minIterations = Math.max(2, Math.min(minIterations, maxIterations));
+        this.maxIterations = Math.max(this.minIterations, maxIterations);
+        this.warmupCv = warmupCv;
+        this.precision = precision;
+    }
+
+    /**
+     * The number of iterations of the calibration run, which is long enough to observe the longest warmup
+     * followed by the shortest measurement.
+     */
+    int calibrationIterations() {
+        return maxWarmupIterations + minIterations;
+    }
+
+    /**
+     * Reads the scores of a calibration run from a JMH JSON results file, and returns the plan of each benchmark.
+     * When a benchmark has several modes or parameters, it gets the longest of their plans.
+     */
+    Map<String, Plan> plan(File calibrationResults) {
+        Map<String, Plan> plans = new TreeMap<>();
+        Object json = new JsonSlurper().parse(calibrationResults);
+        if (!(json instanceof List)) {
+            return plans;
+        }
+        for (Object item : (List<?>) json) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> result = (Map<?, ?>) item;
+            Object metric = result.get("primaryMetric");
+            if (result.get("benchmark") == null || !(metric instanceof Map)) {
+                continue;
+            }
+            Plan plan = plan(firstFork(((Map<?, ?>) metric).get("rawData")));
+            plans.merge(result.get("benchmark").toString(), plan, Plan::max);
+        }
+        return plans;
+    }
+
+    /**
+     * Computes the plan of a benchmark from the successive scores of a single fork.
+     */
+    Plan plan(List<Double> scores) {
+        int warmup = maxWarmupIterations;
+        for (int start = minWarmupIterations; start < maxWarmupIterations; start++) {
+            if (start + minIterations <= scores.size()
+                    && coefficientOfVariation(scores.subList(start, start + minIterations)) <= warmupCv) {
+                warmup = start;
+                break;
+            }
+        }
+        List<Double> measured = scores.size() > warmup ? scores.subList(warmup, scores.size()) : new ArrayList<>();
+        return new Plan(warmup, measurementIterations(measured));
+    }
+
+    /**
+     * Returns the smallest number of iterations for which the half-width of the 99.9% confidence interval
+     * of the mean, estimated from the given scores, is within the target precision relative to the mean.
+     */
+    private int measurementIterations(List<Double> scores) {
+        if (scores.size() < 2) {
+            return maxIterations;
+        }
+        double mean = mean(scores);
+        double deviation = standardDeviation(scores, mean);
+        for (int n = minIterations; n < maxIterations; n++) {
+            if (BenchmarkComparison.studentQuantile(n - 1) * deviation / Math.sqrt(n) <= precision * Math.abs(mean)) {
+                return n;
+            }
+        }
+        return maxIterations;
+    }
+
+    static double coefficientOfVariation(List<Double> scores) {
+        double mean = mean(scores);
+        return mean == 0 ? Double.POSITIVE_INFINITY : standardDeviation(scores, mean) / Math.abs(mean);
+    }
+
+    private static double mean(List<Double> scores) {
+        return scores.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+    }
+
+    private static double standardDeviation(List<Double> scores, double mean) {
+        if (scores.size() < 2) {
+            return 0;
+        }
+        double sum = 0;
+        for (double score : scores) {
+            sum += (score - mean) * (score - mean);
+        }
+        return Math.sqrt(sum / (scores.size() - 1));
+    }
+
+    private static List<Double> firstFork(Object rawData) {
+        List<Double> scores = new ArrayList<>();
+        if (rawData instanceof List && !((List<?>) rawData).isEmpty() && ((List<?>) rawData).get(0) instanceof List) {
+            for (Object score : (List<?>) ((List<?>) rawData).get(0)) {
+                if (score instanceof Number) {
+                    scores.add(((Number) score).doubleValue());
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * The number of warmup and measurement iterations of a benchmark.
+     */
+    static final class Plan {
+        private final int warmupIterations;
+        private final int iterations;
+
+        Plan(int warmupIterations, int iterations) {
+            this.warmupIterations = warmupIterations;
+            this.iterations = iterations;
+        }
+
+        int getWarmupIterations() {
+            return warmupIterations;
+        }
+
+        int getIterations() {
+            return iterations;
+        }
+
+        private static Plan max(Plan a, Plan b) {
+            return new Plan(Math.max(a.warmupIterations, b.warmupIterations), Math.max(a.iterations, b.iterations));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Plan plan = (Plan) o;
+            return warmupIterations == plan.warmupIterations && iterations == plan.iterations;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(warmupIterations, iterations);
+        }
+
+        @Override
+        public String toString() {
+            return warmupIterations + " warmup iterations, " + iterations + " iterations";
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes a calibration run measuring every iteration of a single fork, then executes the benchmarks grouped by
+ * the number of warmup and measurement iterations they need, and merges their results.
+ */
+class AdaptiveIterationsRunner implements BenchmarkRunner {
+    private final JMHTask task;
+
+    AdaptiveIterationsRunner(JMHTask task) {
+        this.task = task;
+    }
+
+    @Override
+    public void run(List<String> benchmarks) {
+        int warmupIterations = task.getWarmupIterations().getOrElse(JMHTask.JMH_DEFAULT_ITERATIONS);
+        int iterations = task.getIterations().getOrElse(JMHTask.JMH_DEFAULT_ITERATIONS);
+        AdaptiveIterations adaptive = new AdaptiveIterations(
+                task.getMinWarmupIterations().getOrElse(1), warmupIterations,
+                task.getMinIterations().getOrElse(3), iterations,
+                task.getAdaptiveWarmupCv().getOrElse(0.02d), task.getAdaptivePrecision().getOrElse(0.05d));
+        File adaptiveDir = new File(task.getTemporaryDir(), "adaptive");
+        task.getFileSystemOperations().delete(spec -> spec.delete(adaptiveDir));
+        adaptiveDir.mkdirs();
+        File calibration = new File(adaptiveDir, "calibration.json");
+        List<String> calibrationArgs = task.collectArguments(benchmarks);
+        JMHTask.applyCliArgs(calibrationArgs, new String[]{
+                "-f", "1", "-wf", "0", "-wi", "0", "-i", String.valueOf(adaptive.calibrationIterations()),
+                "-rf", "json", "-rff", calibration.getAbsolutePath(),
+                "-o", new File(adaptiveDir, "calibration.txt").getAbsolutePath()});
+        task.getLogger().lifecycle("Calibrating {} benchmarks", benchmarks.size());
+        task.runJmh(calibrationArgs, false);
+
+        Map<String, AdaptiveIterations.Plan> plans = calibration.isFile() ? adaptive.plan(calibration) : Collections.emptyMap();
+        AdaptiveIterations.Plan longest = new AdaptiveIterations.Plan(warmupIterations, iterations);
+        Map<AdaptiveIterations.Plan, List<String>> groups = new LinkedHashMap<>();
+        for (String benchmark : benchmarks) {
+            groups.computeIfAbsent(plans.getOrDefault(benchmark, longest), plan -> new ArrayList<>()).add(benchmark);
+        }
+        Map<String, List<String>> groupArgs = new LinkedHashMap<>();
+        groups.forEach((plan, group) -> {
+            List<String> args = task.collectArguments(group);
+            JMHTask.overrideOption(args, "-wi", String.valueOf(plan.getWarmupIterations()));
+            JMHTask.overrideOption(args, "-i", String.valueOf(plan.getIterations()));
+            groupArgs.put(group.size() + " benchmarks with " + plan, args);
+        });
+        task.runInGroups(adaptiveDir, groupArgs);
+    }
+}
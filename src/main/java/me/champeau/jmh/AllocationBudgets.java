@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the normalized allocation rate measured by the {@code gc} profiler against the budgets of the
+ * benchmarks, in bytes per operation.
+ */
+class AllocationBudgets {
+    static final String METRIC = "gc.alloc.rate.norm";
+
+    /**
+     * Returns a description of each result allocating more than the smallest budget among the patterns matching
+     * its benchmark. Scores are rounded to the nearest byte, since allocation-free code is reported with a
+     * residual fraction of a byte.
+     */
+    static List<String> violations(List<?> results, Map<String, Integer> budgets) {
+        List<String> violations = new ArrayList<>();
+        for (Object item : results) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> result = (Map<?, ?>) item;
+            String benchmark = String.valueOf(result.get("benchmark"));
+            Integer budget = null;
+            for (Map.Entry<String, Integer> entry : budgets.entrySet()) {
+                if (Pattern.compile(entry.getKey()).matcher(benchmark).find() && (budget == null || entry.getValue() < budget)) {
+                    budget = entry.getValue();
+                }
+            }
+            if (budget == null) {
+                continue;
+            }
+            String name = benchmark + (isEmpty(result.get("params")) ? "" : " " + result.get("params")) + " (" + result.get("mode") + ")";
+            Double allocated = allocationRate(result);
+            if (allocated == null) {
+                violations.add(name + ": no " + METRIC + " metric, the gc profiler must be enabled");
+            } else if (Math.round(allocated) > budget) {
+                violations.add(String.format(Locale.ROOT, "%s: allocates %.1f B/op, over the budget of %d B/op", name, allocated, budget));
+            }
+        }
+        return violations;
+    }
+
+    private static Double allocationRate(Map<?, ?> result) {
+        Object secondaryMetrics = result.get("secondaryMetrics");
+        if (!(secondaryMetrics instanceof Map)) {
+            return null;
+        }
+        for (Map.Entry<?, ?> metric : ((Map<?, ?>) secondaryMetrics).entrySet()) {
+            if (METRIC.equals(JmhProfilers.metricName(metric.getKey())) && metric.getValue() instanceof Map) {
+                Object score = ((Map<?, ?>) metric.getValue()).get("score");
+                return score instanceof Number ? ((Number) score).doubleValue() : null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEmpty(Object params) {
+        return !(params instanceof Map) || ((Map<?, ?>) params).isEmpty();
+    }
+
+    private AllocationBudgets() {
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.InvalidUserDataException;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Configures the {@code async} profiler of JMH, which attaches async-profiler to the benchmark processes and
+ * writes the profile of each benchmark in its own directory.
+ */
+class AsyncProfiler {
+    static final Set<String> EVENTS = Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(
+            "alloc", "cpu", "lock", "wall")));
+    static final Set<String> OUTPUTS = Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(
+            "collapsed", "flamegraph", "jfr", "text", "tree")));
+
+    // locations of the native library in async-profiler distributions, the oldest ones using build/
+    private static final List<String> LIBRARY_PATHS = Arrays.asList(
+            "lib/libasyncProfiler.so", "lib/libasyncProfiler.dylib", "build/libasyncProfiler.so", "build/libasyncProfiler.dylib");
+
+    /**
+     * Returns the native library of async-profiler, given either the library itself or the directory of an
+     * async-profiler distribution.
+     */
+    static File resolveLibrary(File location) {
+        if (location.isFile()) {
+            return location;
+        }
+        if (location.isDirectory()) {
+            for (String path : LIBRARY_PATHS) {
+                File library = new File(location, path);
+                if (library.isFile()) {
+                    return library;
+                }
+            }
+        }
+        throw new InvalidUserDataException("Cannot find the async-profiler library at " + location
+                + ". Use the path to libasyncProfiler, or to the directory of an async-profiler distribution.");
+    }
+
+    /**
+     * Returns the argument of {@code -prof} enabling async-profiler, the interval being optional.
+     */
+    static String profilerOption(File library, String event, Integer interval, String output, File directory) {
+        if (!EVENTS.contains(event)) {
+            throw new InvalidUserDataException("Unsupported async-profiler event '" + event + "'. Use one of " + EVENTS + ".");
+        }
+        for (String format : output.split(",")) {
+            if (!OUTPUTS.contains(format.trim())) {
+                throw new InvalidUserDataException("Unsupported async-profiler output '" + format.trim() + "'. Use one of " + OUTPUTS + ".");
+            }
+        }
+        StringBuilder option = new StringBuilder("async:libPath=").append(library.getAbsolutePath())
+                .append(";event=").append(event);
+        if (interval != null) {
+            option.append(";interval=").append(interval);
+        }
+        option.append(";output=").append(output.replace(" ", ""))
+                .append(";dir=").append(directory.getAbsolutePath());
+        return option.toString();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Records the JMH invocations of a run which completed, together with their results, so that a run
+ * which was interrupted can be resumed by only executing the remaining invocations. Invocations are
+ * identified by their arguments, by the list of benchmarks they were generated from, and by the bytecode
+ * of the benchmark classes and of the classes they depend on.
+ */
+class BenchmarkCheckpoint {
+    private static final String STATE_FILE = "checkpoint.json";
+
+    private final File dir;
+    private final byte[] benchmarkList;
+    private final byte[] classes;
+    private final Map<String, Object> completed;
+
+    /**
+     * @param dir the directory of the checkpoint
+     * @param benchmarkList the benchmark list generated by JMH, if any, so that checkpoints are not reused
+     * once benchmarks changed
+     * @param classesDirs the classes directories of the benchmarks and of the code they depend on, so that
+     * checkpoints are not reused once the code of benchmarks changed
+     */
+    BenchmarkCheckpoint(File dir, File benchmarkList, Iterable<File> classesDirs) {
+        this.dir = dir;
+        this.benchmarkList = read(benchmarkList);
+        this.classes = fingerprint(benchmarkList, classesDirs);
+        this.completed = readState();
+    }
+
+    /**
+     * Returns the key identifying the JMH invocation with the given arguments.
+     */
+    String key(List<String> args) {
+        MessageDigest digest = ClassDependencies.sha256();
+        digest.update(benchmarkList);
+        digest.update(classes);
+        for (String arg : args) {
+            digest.update(arg.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return ClassDependencies.toHex(digest.digest()).substring(0, 16);
+    }
+
+    /**
+     * Returns the directory where the invocation with the given key writes its results.
+     */
+    File directory(String key) {
+        return new File(dir, key);
+    }
+
+    boolean isCompleted(String key) {
+        return completed.containsKey(key) && directory(key).isDirectory();
+    }
+
+    /**
+     * Records that the invocation with the given key completed. The state file is replaced atomically, so
+     * that it is never left half-written.
+     */
+    void completed(String key, String description) {
+        completed.put(key, description);
+        File state = new File(dir, STATE_FILE);
+        File temporary = new File(dir, STATE_FILE + ".tmp");
+        try {
+            Files.createDirectories(dir.toPath());
+            Files.write(temporary.toPath(), JsonOutput.prettyPrint(JsonOutput.toJson(completed)).getBytes(StandardCharsets.UTF_8));
+            Files.move(temporary.toPath(), state.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Object> readState() {
+        Map<String, Object> state = new TreeMap<>();
+        File file = new File(dir, STATE_FILE);
+        if (file.isFile()) {
+            Object json = new JsonSlurper().parse(file);
+            if (json instanceof Map) {
+                ((Map<?, ?>) json).forEach((key, value) -> state.put(String.valueOf(key), value));
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Computes a fingerprint of the classes of all the benchmarks, including the classes they depend on.
+     */
+    private static byte[] fingerprint(File benchmarkList, Iterable<File> classesDirs) {
+        Set<String> benchmarkClasses = new TreeSet<>();
+        if (benchmarkList != null) {
+            for (String line : BenchmarkListFile.readLines(benchmarkList)) {
+                benchmarkClasses.add(BenchmarkListFile.benchmarkClass(line));
+            }
+        }
+        ClassDependencies dependencies = new ClassDependencies(classesDirs);
+        MessageDigest digest = ClassDependencies.sha256();
+        for (String className : benchmarkClasses) {
+            digest.update(className.getBytes(StandardCharsets.UTF_8));
+            digest.update(String.valueOf(dependencies.fingerprint(className)).getBytes(StandardCharsets.UTF_8));
+        }
+        return digest.digest();
+    }
+
+    private static byte[] read(File file) {
+        if (file == null || !file.isFile()) {
+            return new byte[0];
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
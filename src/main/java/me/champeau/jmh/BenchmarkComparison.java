@@ -0,0 +1,240 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the results of benchmarks, read from JMH JSON results, against a baseline.
+ */
+class BenchmarkComparison {
+    /**
+     * The quantile of the standard normal distribution used for 99.9% confidence intervals, matching the
+     * confidence level of the score error computed by JMH.
+     */
+    private static final double Z_999 = 3.2905;
+
+    private final String name;
+    private final boolean higherIsBetter;
+    private final Double baseline;
+    private final Double current;
+    private final double change;
+    private final double changeError;
+
+    private BenchmarkComparison(String name, boolean higherIsBetter, Double baseline, Double current, double change, double changeError) {
+        this.name = name;
+        this.higherIsBetter = higherIsBetter;
+        this.baseline = baseline;
+        this.current = current;
+        this.change = change;
+        this.changeError = changeError;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isMissingInBaseline() {
+        return baseline == null;
+    }
+
+    boolean isMissingInCurrent() {
+        return current == null;
+    }
+
+    /**
+     * The relative change of the score, e.g. {@code 0.05} when the score increased by 5%.
+     */
+    double getChange() {
+        return change;
+    }
+
+    /**
+     * The half-width of the 99.9% confidence interval of the relative change.
+     */
+    double getChangeError() {
+        return changeError;
+    }
+
+    /**
+     * Tells whether the score got worse by more than the threshold, with a confidence interval which excludes
+     * no change at all. Whether worse means lower or higher depends on the benchmark mode.
+     */
+    boolean isRegression(double threshold) {
+        if (baseline == null || current == null) {
+            return false;
+        }
+        double degradation = higherIsBetter ? -change : change;
+        return degradation > threshold && degradation - changeError > 0;
+    }
+
+    boolean isImprovement(double threshold) {
+        if (baseline == null || current == null) {
+            return false;
+        }
+        double improvement = higherIsBetter ? change : -change;
+        return improvement > threshold && improvement - changeError > 0;
+    }
+
+    String format() {
+        if (baseline == null) {
+            return String.format("%-80s %14s -> %14s  (new)", name, "", current);
+        }
+        if (current == null) {
+            return String.format("%-80s %14s -> %14s  (removed)", name, baseline, "");
+        }
+        return String.format("%-80s %14.3f -> %14.3f  %+8.2f%% \u00b1 %.2f%%", name, baseline, current, change * 100, changeError * 100);
+    }
+
+    /**
+     * Compares the current results with the baseline results, matching them by benchmark, mode and parameters.
+     */
+    static List<BenchmarkComparison> compare(List<?> baselineResults, List<?> currentResults) {
+        Map<String, Map<?, ?>> baseline = index(baselineResults);
+        Map<String, Map<?, ?>> current = index(currentResults);
+        Map<String, Boolean> names = new TreeMap<>();
+        baseline.keySet().forEach(name -> names.put(name, true));
+        current.keySet().forEach(name -> names.put(name, true));
+        List<BenchmarkComparison> comparisons = new ArrayList<>();
+        for (String name : names.keySet()) {
+            Map<?, ?> before = baseline.get(name);
+            Map<?, ?> after = current.get(name);
+            boolean higherIsBetter = "thrpt".equals(String.valueOf((after != null ? after : before).get("mode")));
+            if (before == null || after == null) {
+                comparisons.add(new BenchmarkComparison(name, higherIsBetter,
+                        before == null ? null : score(before), after == null ? null : score(after), 0, 0));
+                continue;
+            }
+            Estimate b = estimate(before);
+            Estimate c = estimate(after);
+            double change = (c.mean - b.mean) / b.mean;
+            // delta method for the ratio of two independent estimates
+            double relativeError = Math.sqrt(square(c.error / b.mean) + square(c.mean * b.error / square(b.mean)));
+            comparisons.add(new BenchmarkComparison(name, higherIsBetter, b.mean, c.mean, change, relativeError));
+        }
+        return comparisons;
+    }
+
+    static Map<String, Map<?, ?>> index(List<?> results) {
+        Map<String, Map<?, ?>> index = new LinkedHashMap<>();
+        for (Object item : results) {
+            if (item instanceof Map) {
+                Map<?, ?> result = (Map<?, ?>) item;
+                Object params = result.get("params");
+                String name = result.get("benchmark") + " (" + result.get("mode") + ")"
+                        + (params instanceof Map && !((Map<?, ?>) params).isEmpty() ? " " + new TreeMap<>((Map<?, ?>) params) : "");
+                index.put(name, result);
+            }
+        }
+        return index;
+    }
+
+    private static Double score(Map<?, ?> result) {
+        return number(metric(result).get("score"));
+    }
+
+    private static Map<?, ?> metric(Map<?, ?> result) {
+        Object metric = result.get("primaryMetric");
+        return metric instanceof Map ? (Map<?, ?>) metric : Collections.emptyMap();
+    }
+
+    /**
+     * Estimates the score and the half-width of its 99.9% confidence interval, from the raw measurements when
+     * they are available, or from the score error computed by JMH otherwise.
+     */
+    private static Estimate estimate(Map<?, ?> result) {
+        Map<?, ?> metric = metric(result);
+        List<Double> samples = new ArrayList<>();
+        Object rawData = metric.get("rawData");
+        if (rawData instanceof List) {
+            for (Object fork : (List<?>) rawData) {
+                if (fork instanceof List) {
+                    for (Object value : (List<?>) fork) {
+                        Double sample = number(value);
+                        if (sample != null) {
+                            samples.add(sample);
+                        }
+                    }
+                }
+            }
+        }
+        if (samples.size() > 1) {
+            double mean = samples.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            double variance = samples.stream().mapToDouble(s -> square(s - mean)).sum() / (samples.size() - 1);
+            double error = studentQuantile(samples.size() - 1) * Math.sqrt(variance / samples.size());
+            return new Estimate(mean, error);
+        }
+        Double score = number(metric.get("score"));
+        Double error = number(metric.get("scoreError"));
+        return new Estimate(score == null ? 0 : score, error == null || error.isNaN() ? 0 : error);
+    }
+
+    /**
+     * The 99.95% quantiles of the Student distribution for 1 to 10 degrees of freedom.
+     */
+    private static final double[] STUDENT_999 = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587};
+
+    /**
+     * Returns the 99.95% quantile of the Student distribution, for two-sided 99.9% confidence intervals. Beyond
+     * the tabulated values, it is approximated with the Cornish-Fisher expansion around the normal quantile.
+     */
+    static double studentQuantile(int degreesOfFreedom) {
+        if (degreesOfFreedom <= STUDENT_999.length) {
+            return STUDENT_999[Math.max(1, degreesOfFreedom) - 1];
+        }
+        double z = Z_999;
+        double df = degreesOfFreedom;
+        double z3 = z * z * z;
+        double z5 = z3 * z * z;
+        double z7 = z5 * z * z;
+        return z + (z3 + z) / (4 * df)
+                + (5 * z5 + 16 * z3 + 3 * z) / (96 * df * df)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * df * df * df);
+    }
+
+    private static Double number(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    private static final class Estimate {
+        private final double mean;
+        private final double error;
+
+        private Estimate(double mean, double error) {
+            this.mean = mean;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.GradleException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Reads and writes the resources generated by the JMH bytecode generator.
+ */
+class BenchmarkListFile {
+    static final String BENCHMARK_LIST = "META-INF/BenchmarkList";
+    static final String COMPILER_HINTS = "META-INF/CompilerHints";
+
+    private static final String LINE_PREFIX = "JMH ";
+
+    /**
+     * Returns the non-blank lines of a generated resource, or an empty list if the file doesn't exist.
+     */
+    static List<String> readLines(File file) {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        try {
+            List<String> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the names of the benchmarks of a benchmark list, such as {@code pkg.Class.method}.
+     */
+    static List<String> readBenchmarks(File benchmarkList) {
+        List<String> benchmarks = new ArrayList<>();
+        for (String line : readLines(benchmarkList)) {
+            String[] names = names(line);
+            benchmarks.add(names[0] + "." + names[2]);
+        }
+        return benchmarks;
+    }
+
+    /**
+     * Returns the qualified name of the class declaring the benchmark of a benchmark list entry.
+     */
+    static String benchmarkClass(String line) {
+        return names(line)[0];
+    }
+
+    /**
+     * Reads the benchmark class, generated class and method names which start a benchmark list entry. The
+     * other fields are not read, since they depend on the JMH version used by the build, which may not be
+     * the one of the plugin. Each field is written as {@code S <length> <value>}.
+     */
+    private static String[] names(String line) {
+        if (!line.startsWith(LINE_PREFIX)) {
+            throw unreadableEntry(line);
+        }
+        String[] names = new String[3];
+        int pos = LINE_PREFIX.length();
+        for (int i = 0; i < names.length; i++) {
+            int space = line.indexOf(' ', pos + 2);
+            if (!line.startsWith("S ", pos) || space < 0) {
+                throw unreadableEntry(line);
+            }
+            int length;
+            try {
+                length = Integer.parseInt(line.substring(pos + 2, space));
+            } catch (NumberFormatException e) {
+                throw unreadableEntry(line);
+            }
+            pos = space + 1 + length;
+            if (pos > line.length()) {
+                throw unreadableEntry(line);
+            }
+            names[i] = line.substring(space + 1, pos);
+            pos++;
+        }
+        return names;
+    }
+
+    private static GradleException unreadableEntry(String line) {
+        return new GradleException("Unable to read the benchmark list entry '" + line + "'. It was generated by a "
+                + "version of JMH which is not supported by this plugin, try setting jmhVersion to " + BuildConfig.JMH_VERSION + ".");
+    }
+
+    /**
+     * Writes the given lines, sorted and without duplicates, so that the output doesn't depend on the
+     * order in which classes were processed. Lines end with a line feed on every operating system.
+     */
+    static void writeLines(File file, Collection<String> lines) {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            StringBuilder text = new StringBuilder();
+            for (String line : new TreeSet<>(lines)) {
+                text.append(line).append('\n');
+            }
+            Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Tells if a benchmark entry or a compiler hint, identified by its (dot separated) class name,
+     * belongs to the given top-level class.
+     */
+    static boolean belongsTo(String className, String topLevelClass) {
+        return className.equals(topLevelClass)
+                || className.startsWith(topLevelClass + ".")
+                || className.startsWith(topLevelClass + "$");
+    }
+
+    /**
+     * Extracts the dot separated class name of a compiler hint, which is written as {@code command,pkg/Class.method}.
+     */
+    static String compilerHintClass(String hint) {
+        int comma = hint.indexOf(',');
+        String target = hint.substring(comma + 1).trim();
+        int lastDot = target.lastIndexOf('.');
+        if (lastDot > 0) {
+            target = target.substring(0, lastDot);
+        }
+        return target.replace('/', '.');
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.Named;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Optional;
+
+/**
+ * A rule overriding JMH parameters for the benchmarks matching a pattern, e.g.
+ * <pre>
+ *     jmh {
+ *         benchmarkOverrides {
+ *             macro {
+ *                 include = '.*MacroBenchmark.*'
+ *                 timeOnIteration = '10s'
+ *                 fork = 1
+ *             }
+ *         }
+ *     }
+ * </pre>
+ */
+public interface BenchmarkOverride extends Named {
+    @Override
+    @Input
+    String getName();
+
+    /**
+     * The regular expression selecting the benchmarks this rule applies to, searched in the benchmark
+     * name as JMH does for includes.
+     */
+    @Input
+    Property<String> getInclude();
+
+    @Input
+    @Optional
+    Property<Integer> getFork();
+
+    @Input
+    @Optional
+    Property<Integer> getWarmupIterations();
+
+    @Input
+    @Optional
+    Property<Integer> getIterations();
+
+    @Input
+    @Optional
+    Property<String> getWarmup();
+
+    @Input
+    @Optional
+    Property<String> getTimeOnIteration();
+
+    @Input
+    @Optional
+    Property<Integer> getThreads();
+
+    /**
+     * JVM arguments replacing the {@code jvmArgs} of the run for the matching benchmarks.
+     */
+    @Input
+    @Optional
+    ListProperty<String> getJvmArgs();
+}
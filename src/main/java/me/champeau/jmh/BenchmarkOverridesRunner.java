@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.InvalidUserDataException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Executes the benchmarks matching a rule of {@link JmhParameters#getBenchmarkOverrides()} in a JMH invocation per
+ * rule, with the parameters of the rule, and the other benchmarks in a last invocation. A benchmark matching
+ * several rules gets the first declared one.
+ */
+class BenchmarkOverridesRunner implements BenchmarkRunner {
+    private final JMHTask task;
+    private final List<String> overrideOrder;
+
+    /**
+     * @param overrideOrder the names of the rules in declaration order, in which rules are matched
+     */
+    BenchmarkOverridesRunner(JMHTask task, List<String> overrideOrder) {
+        this.task = task;
+        this.overrideOrder = overrideOrder;
+    }
+
+    @Override
+    public void run(List<String> benchmarks) {
+        for (BenchmarkOverride rule : task.getBenchmarkOverrides()) {
+            if (!rule.getInclude().isPresent()) {
+                throw new InvalidUserDataException("The benchmark override '" + rule.getName() + "' doesn't have an include pattern");
+            }
+        }
+        List<BenchmarkOverride> rules = new ArrayList<>(task.getBenchmarkOverrides());
+        rules.sort(Comparator.comparingInt(rule -> overrideOrder.indexOf(rule.getName())));
+        Map<BenchmarkOverride, List<String>> groups = new LinkedHashMap<>();
+        List<String> others = new ArrayList<>();
+        for (String benchmark : benchmarks) {
+            BenchmarkOverride rule = rules.stream()
+                    .filter(r -> Pattern.compile(r.getInclude().get()).matcher(benchmark).find())
+                    .findFirst()
+                    .orElse(null);
+            if (rule == null) {
+                others.add(benchmark);
+            } else {
+                groups.computeIfAbsent(rule, r -> new ArrayList<>()).add(benchmark);
+            }
+        }
+        Map<String, List<String>> groupArgs = new LinkedHashMap<>();
+        groups.forEach((rule, group) -> {
+            List<String> args = task.collectArguments(group);
+            JMHTask.overrideOption(args, "-f", rule.getFork());
+            JMHTask.overrideOption(args, "-wi", rule.getWarmupIterations());
+            JMHTask.overrideOption(args, "-i", rule.getIterations());
+            JMHTask.overrideOption(args, "-w", rule.getWarmup());
+            JMHTask.overrideOption(args, "-r", rule.getTimeOnIteration());
+            JMHTask.overrideOption(args, "-t", rule.getThreads());
+            if (!rule.getJvmArgs().getOrElse(Collections.emptyList()).isEmpty()) {
+                JMHTask.overrideOption(args, "-jvmArgs", String.join(" ", rule.getJvmArgs().get()));
+            }
+            groupArgs.put(group.size() + " benchmarks overridden by " + rule.getName(), args);
+        });
+        if (!others.isEmpty()) {
+            groupArgs.put(others.size() + " benchmarks without override", task.collectArguments(others));
+        }
+        File groupsDir = new File(task.getTemporaryDir(), "overrides");
+        task.getFileSystemOperations().delete(spec -> spec.delete(groupsDir));
+        task.runInGroups(groupsDir, groupArgs);
+    }
+}
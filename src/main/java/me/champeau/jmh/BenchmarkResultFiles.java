@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the result files written by JMH processes which executed different benchmarks.
+ */
+class BenchmarkResultFiles {
+
+    /**
+     * Merges result files in the given JMH result format: JSON arrays are concatenated, the header of CSV files
+     * is only kept once, and other formats are appended to each other. Missing files are ignored.
+     */
+    static void merge(List<File> parts, File target, String format) {
+        List<String> contents = new ArrayList<>();
+        for (File part : parts) {
+            if (part.isFile()) {
+                contents.add(read(part));
+            }
+        }
+        String merged;
+        switch (format.toLowerCase()) {
+            case "json":
+                merged = mergeJson(contents);
+                break;
+            case "csv":
+            case "scsv":
+                merged = mergeCsv(contents);
+                break;
+            default:
+                merged = String.join("", contents);
+        }
+        try {
+            Files.createDirectories(target.getParentFile().toPath());
+            Files.write(target.toPath(), merged.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String mergeJson(List<String> contents) {
+        // concatenated textually, so that values are written exactly as JMH wrote them
+        List<String> elements = new ArrayList<>();
+        for (String content : contents) {
+            String array = content.trim();
+            if (array.startsWith("[") && array.endsWith("]")) {
+                String inner = array.substring(1, array.length() - 1).trim();
+                if (!inner.isEmpty()) {
+                    elements.add(inner);
+                }
+            }
+        }
+        return "[\n" + String.join(",\n", elements) + "\n]\n";
+    }
+
+    private static String mergeCsv(List<String> contents) {
+        StringBuilder sb = new StringBuilder();
+        for (String content : contents) {
+            int headerEnd = content.indexOf('\n');
+            if (sb.length() == 0) {
+                sb.append(content);
+            } else if (headerEnd >= 0) {
+                sb.append(content.substring(headerEnd + 1));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String read(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
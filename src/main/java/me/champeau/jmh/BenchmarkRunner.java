@@ -0,0 +1,30 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.util.List;
+
+/**
+ * An execution mode of a JMH task, which splits the benchmarks to execute into one or several JMH invocations,
+ * and writes their merged results to the results file of the task.
+ */
+interface BenchmarkRunner {
+    /**
+     * Executes the given benchmarks, selected by the includes and excludes of the task, its shard, and the
+     * changes since its previous run when runs are incremental.
+     */
+    void run(List<String> benchmarks);
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonSlurper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Splits the benchmarks listed in {@code META-INF/BenchmarkList} into shards which can be executed
+ * independently, for example on different CI machines.
+ */
+class BenchmarkShards {
+
+    /**
+     * Returns the sorted names of the benchmarks matching the JMH includes and excludes, which are
+     * regular expressions searched in the benchmark name, as JMH does.
+     */
+    static List<String> select(Collection<String> benchmarks, List<String> includes, List<String> excludes) {
+        List<Pattern> included = compile(includes);
+        List<Pattern> excluded = compile(excludes);
+        TreeSet<String> names = new TreeSet<>();
+        for (String name : benchmarks) {
+            if ((included.isEmpty() || matchesAny(included, name)) && !matchesAny(excluded, name)) {
+                names.add(name);
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Returns the benchmarks of a shard. Without estimated durations, benchmarks are assigned round-robin.
+     * Otherwise, the longest benchmarks are assigned first, each to the shard with the lowest total duration.
+     * Benchmarks without an estimate are assumed to last as long as the average known benchmark.
+     */
+    static List<String> shard(List<String> benchmarks, int shardIndex, int shardCount, Map<String, Double> durations) {
+        List<String> sorted = new ArrayList<>(new TreeSet<>(benchmarks));
+        List<String> result = new ArrayList<>();
+        if (durations.isEmpty()) {
+            for (int i = shardIndex; i < sorted.size(); i += shardCount) {
+                result.add(sorted.get(i));
+            }
+            return result;
+        }
+        double average = durations.values().stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        Map<String, Double> estimates = new HashMap<>();
+        for (String benchmark : sorted) {
+            estimates.put(benchmark, durations.getOrDefault(benchmark, average));
+        }
+        sorted.sort(Comparator.comparing((String b) -> estimates.get(b)).reversed().thenComparing(Comparator.naturalOrder()));
+        double[] totals = new double[shardCount];
+        for (String benchmark : sorted) {
+            int target = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (totals[i] < totals[target]) {
+                    target = i;
+                }
+            }
+            totals[target] += estimates.get(benchmark);
+            if (target == shardIndex) {
+                result.add(benchmark);
+            }
+        }
+        result.sort(Comparator.naturalOrder());
+        return result;
+    }
+
+    /**
+     * Converts benchmark names to a JMH include which only matches these benchmarks. A single regular expression
+     * is used, in which the methods of each class are grouped, to keep the command line of large shards short.
+     */
+    static List<String> exactIncludes(List<String> benchmarks) {
+        Map<String, List<String>> methodsByClass = new LinkedHashMap<>();
+        for (String benchmark : benchmarks) {
+            int lastDot = benchmark.lastIndexOf('.');
+            methodsByClass.computeIfAbsent(benchmark.substring(0, Math.max(lastDot, 0)), c -> new ArrayList<>())
+                    .add(benchmark.substring(lastDot + 1));
+        }
+        StringBuilder include = new StringBuilder("^(?:");
+        methodsByClass.forEach((className, methods) -> {
+            if (include.length() > 4) {
+                include.append('|');
+            }
+            if (!className.isEmpty()) {
+                include.append(Pattern.quote(className)).append("\\.");
+            }
+            include.append(methods.size() == 1 ? "" : "(?:")
+                    .append(methods.stream().map(m -> m.replace("$", "\\$")).collect(Collectors.joining("|")))
+                    .append(methods.size() == 1 ? "" : ")");
+        });
+        return Collections.singletonList(include.append(")$").toString());
+    }
+
+    /**
+     * Estimates the duration of each benchmark, in seconds, from the iteration settings recorded in JMH JSON
+     * result files. Results of the same benchmark with different modes or parameters are summed.
+     */
+    static Map<String, Double> estimateDurations(Iterable<File> resultFiles) {
+        Map<String, Double> durations = new HashMap<>();
+        for (File file : resultFiles) {
+            if (!file.isFile()) {
+                continue;
+            }
+            Object json;
+            try {
+                json = new JsonSlurper().parse(file);
+            } catch (RuntimeException e) {
+                // not a JSON results file
+                continue;
+            }
+            if (!(json instanceof List)) {
+                continue;
+            }
+            for (Object item : (List<?>) json) {
+                if (item instanceof Map) {
+                    Map<?, ?> result = (Map<?, ?>) item;
+                    Object benchmark = result.get("benchmark");
+                    if (benchmark != null) {
+                        durations.merge(benchmark.toString(), estimateDuration(result), Double::sum);
+                    }
+                }
+            }
+        }
+        return durations;
+    }
+
+    private static double estimateDuration(Map<?, ?> result) {
+        int forks = Math.max(1, intValue(result.get("forks")));
+        double warmup = intValue(result.get("warmupIterations")) * seconds(result.get("warmupTime"));
+        double measurement = intValue(result.get("measurementIterations")) * seconds(result.get("measurementTime"));
+        return forks * (warmup + measurement);
+    }
+
+    private static int intValue(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    /**
+     * Parses a JMH time value, such as {@code 10 s} or {@code 500 ms}.
+     */
+    static double seconds(Object timeValue) {
+        if (timeValue == null) {
+            return 0;
+        }
+        String[] parts = timeValue.toString().trim().split("\\s+");
+        if (parts.length != 2) {
+            return 0;
+        }
+        double value;
+        try {
+            value = Double.parseDouble(parts[0]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        TimeUnit unit;
+        switch (parts[1]) {
+            case "ns":
+                unit = TimeUnit.NANOSECONDS;
+                break;
+            case "us":
+                unit = TimeUnit.MICROSECONDS;
+                break;
+            case "ms":
+                unit = TimeUnit.MILLISECONDS;
+                break;
+            case "min":
+                unit = TimeUnit.MINUTES;
+                break;
+            case "hr":
+                unit = TimeUnit.HOURS;
+                break;
+            case "day":
+                unit = TimeUnit.DAYS;
+                break;
+            default:
+                unit = TimeUnit.SECONDS;
+        }
+        return value * unit.toNanos(1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static List<Pattern> compile(List<String> regexps) {
+        return regexps.stream().map(Pattern::compile).collect(Collectors.toList());
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String name) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(name).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes fingerprints of classes which take into account all the classes they transitively depend on, within
+ * a set of classes directories. Dependencies are found in the constant pool of the class files.
+ */
+class ClassDependencies extends ClassHierarchy {
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([\\w/$]+);");
+
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+    private final Map<String, String> hashes = new HashMap<>();
+
+    ClassDependencies(Iterable<File> classesDirs) {
+        super(classesDirs);
+    }
+
+    /**
+     * Returns a fingerprint of the given class, identified by its binary or qualified name, and of all the
+     * classes it transitively depends on, or null if the class cannot be found.
+     */
+    String fingerprint(String className) {
+        String root = internalName(className);
+        if (root == null) {
+            return null;
+        }
+        Set<String> visited = new TreeSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            String name = queue.removeFirst();
+            if (classFiles.containsKey(name) && visited.add(name)) {
+                queue.addAll(dependenciesOf(name));
+            }
+        }
+        MessageDigest digest = sha256();
+        for (String name : visited) {
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            digest.update(hashOf(name).getBytes(StandardCharsets.UTF_8));
+        }
+        return toHex(digest.digest());
+    }
+
+    private Set<String> dependenciesOf(String name) {
+        return dependencies.computeIfAbsent(name, n -> referencedClasses(read(classFiles.get(n))));
+    }
+
+    private String hashOf(String name) {
+        return hashes.computeIfAbsent(name, n -> toHex(sha256().digest(read(classFiles.get(n)))));
+    }
+
+    /**
+     * Returns the internal names of the classes referenced from the constant pool of a class file.
+     */
+    static Set<String> referencedClasses(byte[] classFile) {
+        Set<String> classes = new HashSet<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile))) {
+            ConstantPool pool = new ConstantPool(in);
+            for (int i = 1; i < pool.utf8.length; i++) {
+                String name = pool.className(i);
+                if (name != null && !name.startsWith("[")) {
+                    classes.add(name);
+                }
+                String utf8 = pool.utf8[i];
+                if (utf8 != null && utf8.indexOf(';') > 0) {
+                    // field and method descriptors, signatures and array class names
+                    Matcher matcher = DESCRIPTOR_CLASS.matcher(utf8);
+                    while (matcher.find()) {
+                        classes.add(matcher.group(1));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return classes;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
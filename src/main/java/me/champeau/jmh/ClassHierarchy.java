@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Finds the superclasses of classes within a set of classes directories. Superclasses are read from the
+ * constant pool of the class files.
+ */
+class ClassHierarchy {
+    final Map<String, File> classFiles = new HashMap<>();
+
+    ClassHierarchy(Iterable<File> classesDirs) {
+        for (File dir : classesDirs) {
+            if (!dir.isDirectory()) {
+                continue;
+            }
+            Path root = dir.toPath();
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter(path -> path.toString().endsWith(".class")).forEach(path -> {
+                    String relative = root.relativize(path).toString().replace(File.separatorChar, '/');
+                    // the first classes directory wins, as on a classpath
+                    classFiles.putIfAbsent(relative.substring(0, relative.length() - ".class".length()), path.toFile());
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the internal names of the superclasses of a class, nearest first, stopping at the first one
+     * which cannot be found in the classes directories.
+     */
+    List<String> superClassesOf(String className) {
+        List<String> superClasses = new ArrayList<>();
+        String name = internalName(className);
+        while (name != null) {
+            name = superClass(read(classFiles.get(name)));
+            if (name == null || !classFiles.containsKey(name) || superClasses.contains(name)) {
+                break;
+            }
+            superClasses.add(name);
+        }
+        return superClasses;
+    }
+
+    /**
+     * Returns the internal name of a class given by its binary or qualified name, in which nested classes
+     * may be separated by a dot, or null if the class cannot be found.
+     */
+    String internalName(String className) {
+        String name = className.replace('.', '/');
+        while (!classFiles.containsKey(name)) {
+            int lastSlash = name.lastIndexOf('/');
+            if (lastSlash < 0) {
+                return null;
+            }
+            name = name.substring(0, lastSlash) + "$" + name.substring(lastSlash + 1);
+        }
+        return name;
+    }
+
+    /**
+     * Returns the internal name of the superclass of a class file, or null if it has none.
+     */
+    static String superClass(byte[] classFile) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile))) {
+            ConstantPool pool = new ConstantPool(in);
+            in.skipBytes(4); // access flags and this class
+            return pool.className(in.readUnsignedShort());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte[] read(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The UTF-8 and class entries of the constant pool of a class file.
+     */
+    static class ConstantPool {
+        final String[] utf8;
+        private final int[] classNameIndexes;
+
+        ConstantPool(DataInputStream in) throws IOException {
+            in.skipBytes(8); // magic and version
+            int count = in.readUnsignedShort();
+            utf8 = new String[count];
+            classNameIndexes = new int[count];
+            for (int i = 1; i < count; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1: // Utf8
+                        utf8[i] = in.readUTF();
+                        break;
+                    case 7: // Class
+                        classNameIndexes[i] = in.readUnsignedShort();
+                        break;
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        in.skipBytes(2);
+                        break;
+                    case 15: // MethodHandle
+                        in.skipBytes(3);
+                        break;
+                    case 3: // Integer
+                    case 4: // Float
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        in.skipBytes(4);
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        in.skipBytes(8);
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unexpected constant pool tag " + tag);
+                }
+            }
+        }
+
+        /**
+         * Returns the class name of a class entry, or null if the index isn't the one of a class entry.
+         */
+        String className(int index) {
+            return index > 0 && index < classNameIndexes.length && classNameIndexes[index] > 0
+                    ? utf8[classNameIndexes[index]]
+                    : null;
+        }
+    }
+}
@@ -15,12 +15,36 @@
  */
 package me.champeau.jmh;
 
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.services.BuildService;
 import org.gradle.api.services.BuildServiceParameters;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Controls how many tasks of a given type are executed concurrently in a build. By default, a single task is
+ * executed at a time. When a CPU or memory budget is configured, tasks are instead admitted in order as long as
+ * the resources they reserve fit in the budget, across all the projects of the build.
+ */
 public abstract class ConcurrentExecutionControlBuildService implements BuildService<ConcurrentExecutionControlBuildService.Params> {
+    private static final Logger LOGGER = Logging.getLogger(ConcurrentExecutionControlBuildService.class);
+
+    private final Deque<Reservation> waiting = new ArrayDeque<>();
+    private int usedCpus;
+    private long usedMemory;
+
     public static Provider<ConcurrentExecutionControlBuildService> restrict(Class<?> clazz, Gradle gradle, int maxConcurrentTasks) {
         return gradle.getSharedServices()
                 .registerIfAbsent("maxConcurrent" + clazz.getName(),
@@ -32,6 +56,156 @@ public abstract class ConcurrentExecutionControlBuildService implements BuildSer
         return ConcurrentExecutionControlBuildService.restrict(clazz, gradle, 1);
     }
 
+    /**
+     * Registers a service admitting tasks within the given budgets. When neither budget is set, a single task
+     * is executed at a time. The budgets are shared by all the projects of the build: those of the first project
+     * registering the service apply, and the service fails when it is first used if another project declared
+     * different ones.
+     * <p>
+     * Tasks waiting for resources hold a worker lease, so that at most the CPU budget and one less than the
+     * maximum number of workers of tasks are started concurrently, which leaves a worker to the rest of the build.
+     *
+     * @param owner the project declaring the budgets, used in error messages
+     */
+    public static Provider<ConcurrentExecutionControlBuildService> restrict(Class<?> clazz,
+                                                                            Gradle gradle,
+                                                                            String owner,
+                                                                            Provider<Integer> cpuBudget,
+                                                                            Provider<String> memoryBudget) {
+        String name = "maxConcurrent" + clazz.getName();
+        int maxWorkers = Math.max(1, gradle.getStartParameter().getMaxWorkerCount() - 1);
+        Provider<ConcurrentExecutionControlBuildService> service = gradle.getSharedServices()
+                .registerIfAbsent(name,
+                        ConcurrentExecutionControlBuildService.class,
+                        spec -> {
+                            spec.getParameters().getCpuBudget().set(cpuBudget);
+                            spec.getParameters().getMemoryBudget().set(memoryBudget.map(ConcurrentExecutionControlBuildService::parseMemory));
+                            spec.getMaxParallelUsages().set(cpuBudget.map(budget -> Math.min(budget, maxWorkers))
+                                    .orElse(memoryBudget.map(budget -> maxWorkers))
+                                    .orElse(1));
+                        });
+        Params registered = (Params) gradle.getSharedServices().getRegistrations().getByName(name).getParameters();
+        registered.getDeclaredBudgets().put(owner, cpuBudget.map(String::valueOf).orElse("not set")
+                .zip(memoryBudget.map(ConcurrentExecutionControlBuildService::parseMemory).map(String::valueOf).orElse("not set"),
+                        (cpus, memory) -> "cpuBudget " + cpus + ", memoryBudget " + memory));
+        return service;
+    }
+
+    public ConcurrentExecutionControlBuildService() {
+        Map<String, String> declared = getParameters().getDeclaredBudgets().getOrElse(Collections.emptyMap());
+        if (new HashSet<>(declared.values()).size() > 1) {
+            StringBuilder budgets = new StringBuilder();
+            declared.forEach((owner, budget) -> budgets.append("\n  ").append(owner).append(": ").append(budget));
+            throw new InvalidUserDataException("The projects of the build declare different JMH budgets:" + budgets
+                    + "\nThe budgets are shared by all the JMH tasks of the build, so every project must declare the same ones.");
+        }
+    }
+
+    /**
+     * Reserves CPUs and memory from the budgets, waiting until enough of them are released by other tasks.
+     * Requirements larger than a budget are capped to the budget, which means that the task is executed alone.
+     * Reservations are admitted in order, so that large reservations are not delayed forever.
+     */
+    Reservation reserve(String owner, int cpus, long memory) {
+        Params params = getParameters();
+        Integer cpuBudget = params.getCpuBudget().getOrNull();
+        Long memoryBudget = params.getMemoryBudget().getOrNull();
+        int reservedCpus = cpuBudget == null ? 0 : Math.min(Math.max(cpus, 1), cpuBudget);
+        long reservedMemory = memoryBudget == null ? 0 : Math.min(Math.max(memory, 0), memoryBudget);
+        if (cpuBudget != null && cpus > cpuBudget) {
+            LOGGER.warn("{} requires {} CPUs but the budget is {} CPUs, it will be executed alone", owner, cpus, cpuBudget);
+        }
+        if (memoryBudget != null && memory > memoryBudget) {
+            LOGGER.warn("{} requires {} bytes of memory but the budget is {} bytes, it will be executed alone", owner, memory, memoryBudget);
+        }
+        Reservation reservation = new Reservation(reservedCpus, reservedMemory);
+        synchronized (this) {
+            waiting.addLast(reservation);
+            try {
+                while (waiting.peekFirst() != reservation
+                        || (cpuBudget != null && usedCpus + reservedCpus > cpuBudget)
+                        || (memoryBudget != null && usedMemory + reservedMemory > memoryBudget)) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                waiting.remove(reservation);
+                notifyAll();
+                Thread.currentThread().interrupt();
+                throw new GradleException("Interrupted while waiting for resources to execute " + owner, e);
+            }
+            waiting.removeFirst();
+            usedCpus += reservedCpus;
+            usedMemory += reservedMemory;
+            notifyAll();
+        }
+        if (cpuBudget != null || memoryBudget != null) {
+            LOGGER.info("{} admitted with {} CPUs and {} bytes of memory", owner, reservedCpus, reservedMemory);
+        }
+        return reservation;
+    }
+
+    private synchronized void release(Reservation reservation) {
+        usedCpus -= reservation.cpus;
+        usedMemory -= reservation.memory;
+        notifyAll();
+    }
+
+    /**
+     * Parses a memory size using the JVM notation, such as {@code 512m} or {@code 4g}.
+     */
+    static long parseMemory(String size) {
+        String value = size.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        if (!value.isEmpty()) {
+            switch (value.charAt(value.length() - 1)) {
+                case 'k':
+                    unit = 1L << 10;
+                    break;
+                case 'm':
+                    unit = 1L << 20;
+                    break;
+                case 'g':
+                    unit = 1L << 30;
+                    break;
+                case 't':
+                    unit = 1L << 40;
+                    break;
+                default:
+            }
+        }
+        String digits = unit == 1 ? value : value.substring(0, value.length() - 1);
+        try {
+            return Long.parseLong(digits) * unit;
+        } catch (NumberFormatException e) {
+            throw new InvalidUserDataException("Invalid memory size '" + size + "', expected a value such as 512m or 4g", e);
+        }
+    }
+
+    /**
+     * Resources reserved by a task, which must be released once the task is done with them.
+     */
+    final class Reservation {
+        private final int cpus;
+        private final long memory;
+
+        private Reservation(int cpus, long memory) {
+            this.cpus = cpus;
+            this.memory = memory;
+        }
+
+        void release() {
+            ConcurrentExecutionControlBuildService.this.release(this);
+        }
+    }
+
     public interface Params extends BuildServiceParameters {
+        Property<Integer> getCpuBudget();
+
+        Property<Long> getMemoryBudget();
+
+        /**
+         * The budgets declared by each project, which must be the same.
+         */
+        MapProperty<String, String> getDeclaredBudgets();
     }
 }
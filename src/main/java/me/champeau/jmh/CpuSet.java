@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A set of CPUs belonging to a single NUMA node, on which a JMH process can be pinned.
+ */
+final class CpuSet {
+    /**
+     * The node of CPUs for which the NUMA topology is unknown.
+     */
+    static final int UNKNOWN_NODE = -1;
+
+    private final int node;
+    private final List<Integer> cpus;
+
+    CpuSet(int node, Iterable<Integer> cpus) {
+        TreeSet<Integer> sorted = new TreeSet<>();
+        cpus.forEach(sorted::add);
+        this.node = node;
+        this.cpus = Collections.unmodifiableList(new ArrayList<>(sorted));
+    }
+
+    int getNode() {
+        return node;
+    }
+
+    List<Integer> getCpus() {
+        return cpus;
+    }
+
+    /**
+     * Returns the command prefix pinning a process to this CPU set, with {@code taskset} or {@code numactl}, or an
+     * empty list if neither of them is available. Memory is bound to the NUMA node of the CPUs when {@code numactl}
+     * is available.
+     */
+    List<String> pinningCommand() {
+        List<String> command = new ArrayList<>();
+        boolean numactl = isExecutableOnPath("numactl");
+        if (numactl && node != UNKNOWN_NODE) {
+            command.add("numactl");
+            command.add("--membind=" + node);
+        }
+        if (isExecutableOnPath("taskset")) {
+            command.add("taskset");
+            command.add("-c");
+            command.add(toCpuList(cpus));
+        } else if (numactl) {
+            if (command.isEmpty()) {
+                command.add("numactl");
+            }
+            command.add("--physcpubind=" + toCpuList(cpus));
+        }
+        return command;
+    }
+
+    /**
+     * Tells whether processes can be pinned to CPU sets on this host, which requires {@code taskset} or
+     * {@code numactl}.
+     */
+    static boolean isPinningAvailable() {
+        return isExecutableOnPath("taskset") || isExecutableOnPath("numactl");
+    }
+
+    /**
+     * Parses a Linux CPU list, such as {@code 0-3,8,10-11}.
+     */
+    static List<Integer> parseCpuList(String cpuList) {
+        List<Integer> cpus = new ArrayList<>();
+        for (String range : cpuList.trim().split(",")) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                cpus.add(Integer.parseInt(range.trim()));
+            } else {
+                int from = Integer.parseInt(range.substring(0, dash).trim());
+                int to = Integer.parseInt(range.substring(dash + 1).trim());
+                for (int cpu = from; cpu <= to; cpu++) {
+                    cpus.add(cpu);
+                }
+            }
+        }
+        return cpus;
+    }
+
+    /**
+     * Formats CPUs as a Linux CPU list, collapsing consecutive CPUs into ranges.
+     */
+    static String toCpuList(List<Integer> cpus) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < cpus.size()) {
+            int j = i;
+            while (j + 1 < cpus.size() && cpus.get(j + 1) == cpus.get(j) + 1) {
+                j++;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(cpus.get(i));
+            if (j > i) {
+                sb.append('-').append(cpus.get(j));
+            }
+            i = j + 1;
+        }
+        return sb.toString();
+    }
+
+    static boolean isExecutableOnPath(String name) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            if (new File(dir, name).canExecute()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return (node == UNKNOWN_NODE ? "" : "node " + node + ", ") + "cpus " + toCpuList(cpus);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Hands out disjoint sets of CPUs to the JMH processes executed concurrently during a build. Each CPU set belongs
+ * to a single NUMA node, and a CPU is only handed out again once the set containing it has been released.
+ */
+public abstract class CpuSetService implements BuildService<BuildServiceParameters.None> {
+    private static final File NUMA_NODES = new File("/sys/devices/system/node");
+    private static final File PROCESS_STATUS = new File("/proc/self/status");
+
+    private final List<CpuSet> topology = readTopology(NUMA_NODES, readAllowedCpus(PROCESS_STATUS));
+    private final Set<Integer> allocated = new HashSet<>();
+
+    public static Provider<CpuSetService> register(Gradle gradle) {
+        return gradle.getSharedServices().registerIfAbsent("jmhCpuSets", CpuSetService.class, spec -> {
+        });
+    }
+
+    /**
+     * Acquires {@code count} disjoint CPU sets, waiting for CPUs to be released if there are not enough free ones.
+     */
+    synchronized List<CpuSet> acquire(int count) {
+        int total = topology.stream().mapToInt(set -> set.getCpus().size()).sum();
+        if (count > total) {
+            throw new InvalidUserDataException("Cannot execute " + count + " JMH processes concurrently on " + total + " CPUs");
+        }
+        try {
+            while (total - allocated.size() < count) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GradleException("Interrupted while waiting for free CPUs", e);
+        }
+        List<CpuSet> cpuSets = partition(freeCpus(), count);
+        cpuSets.forEach(set -> allocated.addAll(set.getCpus()));
+        return cpuSets;
+    }
+
+    synchronized void release(Collection<CpuSet> cpuSets) {
+        cpuSets.forEach(set -> allocated.removeAll(set.getCpus()));
+        notifyAll();
+    }
+
+    private List<CpuSet> freeCpus() {
+        List<CpuSet> free = new ArrayList<>();
+        for (CpuSet node : topology) {
+            List<Integer> cpus = node.getCpus().stream()
+                    .filter(cpu -> !allocated.contains(cpu))
+                    .collect(Collectors.toList());
+            if (!cpus.isEmpty()) {
+                free.add(new CpuSet(node.getNode(), cpus));
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Splits the CPUs of the given NUMA nodes into {@code count} disjoint sets, none of them spanning several nodes.
+     * Sets are assigned to the node with the most CPUs per set, so that sets are as large as possible.
+     */
+    static List<CpuSet> partition(List<CpuSet> nodes, int count) {
+        int[] setsPerNode = new int[nodes.size()];
+        for (int i = 0; i < count; i++) {
+            int best = -1;
+            for (int n = 0; n < nodes.size(); n++) {
+                int cpus = nodes.get(n).getCpus().size();
+                if (setsPerNode[n] < cpus && (best < 0
+                        || (double) cpus / (setsPerNode[n] + 1) > (double) nodes.get(best).getCpus().size() / (setsPerNode[best] + 1))) {
+                    best = n;
+                }
+            }
+            setsPerNode[best]++;
+        }
+        List<CpuSet> cpuSets = new ArrayList<>();
+        for (int n = 0; n < nodes.size(); n++) {
+            List<Integer> cpus = nodes.get(n).getCpus();
+            int sets = setsPerNode[n];
+            for (int s = 0; s < sets; s++) {
+                // spread the remaining CPUs over the first sets
+                int from = s * (cpus.size() / sets) + Math.min(s, cpus.size() % sets);
+                int to = from + cpus.size() / sets + (s < cpus.size() % sets ? 1 : 0);
+                cpuSets.add(new CpuSet(nodes.get(n).getNode(), cpus.subList(from, to)));
+            }
+        }
+        return cpuSets;
+    }
+
+    /**
+     * Reads the CPUs of each NUMA node from sysfs, keeping only the CPUs this process is allowed to run on.
+     * When the topology is not available, all the allowed CPUs are considered to belong to a single node of
+     * unknown index.
+     */
+    static List<CpuSet> readTopology(File nodesDir, List<Integer> allowedCpus) {
+        File[] nodeDirs = nodesDir.listFiles((dir, name) -> name.matches("node\\d+"));
+        List<CpuSet> nodes = new ArrayList<>();
+        if (nodeDirs != null) {
+            Arrays.sort(nodeDirs, Comparator.comparingInt(dir -> Integer.parseInt(dir.getName().substring(4))));
+            for (File nodeDir : nodeDirs) {
+                List<Integer> cpus = CpuSet.parseCpuList(readFile(new File(nodeDir, "cpulist")));
+                cpus.retainAll(allowedCpus);
+                if (!cpus.isEmpty()) {
+                    nodes.add(new CpuSet(Integer.parseInt(nodeDir.getName().substring(4)), cpus));
+                }
+            }
+        }
+        if (nodes.isEmpty()) {
+            nodes.add(new CpuSet(CpuSet.UNKNOWN_NODE, allowedCpus));
+        }
+        return nodes;
+    }
+
+    /**
+     * Reads the CPUs this process is allowed to run on, which may be restricted by a container, falling back
+     * to the number of available processors.
+     */
+    static List<Integer> readAllowedCpus(File processStatus) {
+        for (String line : readFile(processStatus).split("\n")) {
+            if (line.startsWith("Cpus_allowed_list:")) {
+                return CpuSet.parseCpuList(line.substring(line.indexOf(':') + 1));
+            }
+        }
+        return IntStream.range(0, Runtime.getRuntime().availableProcessors()).boxed().collect(Collectors.toList());
+    }
+
+    private static String readFile(File file) {
+        if (!file.isFile()) {
+            return "";
+        }
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -19,15 +19,52 @@ import org.gradle.api.Named;
 import org.gradle.api.Project;
 import org.gradle.api.file.DuplicatesStrategy;
 
+import java.util.Collections;
+
 class DefaultsConfigurer {
-    public static void configureDefaults(JmhParameters params, Project project) {
+    public static void configureDefaults(JmhExtension params, Project project) {
         params.getJmhVersion().convention(BuildConfig.JMH_VERSION);
         params.getIncludeTests().convention(true);
         params.getZip64().convention(false);
         params.getDuplicateClassesStrategy().convention(DuplicatesStrategy.INCLUDE);
         params.getFailOnError().convention(false);
         params.getForceGC().convention(false);
+        params.getBytecodeGeneratorInProcess().convention(false);
+        params.getUseJmhJar().convention(true);
+        params.getThinJar().convention(false);
+        params.getParallelRuns().convention(1);
+        params.getWarmLauncher().convention(false);
+        params.getIncrementalRuns().convention(false);
+        params.getAdaptiveIterations().convention(false);
+        params.getResumable().convention(false);
+        params.getJitDiagnostics().convention(false);
+        params.getJfr().convention(false);
+        params.getSweepRefinements().convention(0);
+        params.getScalability().convention(false);
+        params.getMinWarmupIterations().convention(1);
+        params.getMinIterations().convention(3);
+        params.getAdaptiveWarmupCv().convention(0.02d);
+        params.getAdaptivePrecision().convention(0.05d);
         params.getResultFormat().convention("text");
+        params.getAsyncProfilerEvent().convention("cpu");
+        params.getAsyncProfilerOutput().convention("flamegraph");
+        configureOutputLocations(params, project);
+        // unknown profilers are reported when the project is configured rather than when benchmarks run
+        project.afterEvaluate(p -> JmhProfilers.validate(params.getProfilers().getOrElse(Collections.emptyList())));
+    }
+
+    /**
+     * Configures the locations of the files written by a run, in a directory named after the parameters.
+     */
+    public static void configureOutputLocations(JmhParameters params, Project project) {
+        params.getAsyncProfilerResultsDirectory().convention(project.getLayout().getBuildDirectory()
+                .dir("results/" + nameOf(params) + "/async-profiler"));
+        params.getJitDiagnosticsDirectory().convention(project.getLayout().getBuildDirectory()
+                .dir("results/" + nameOf(params) + "/jit"));
+        params.getJfrResultsDirectory().convention(project.getLayout().getBuildDirectory()
+                .dir("results/" + nameOf(params) + "/jfr"));
+        params.getPartialResultsFile().convention(project.getLayout().getBuildDirectory()
+                .file("results/" + nameOf(params) + "/partial-results.jsonl"));
         params.getResultsFile().convention(
                 project.getProviders().zip(params.getResultFormat(), project.getLayout().getBuildDirectory(), (format, dir) ->
                         dir.file("results/" + nameOf(params) + "/results." + extensionFor(format)))
@@ -90,6 +127,43 @@ class DefaultsConfigurer {
         into.getListProfilersDetails().convention(from.getListProfilersDetails());
         into.getListResultFormats().convention(from.getListResultFormats());
         into.getJmhOptions().convention(from.getJmhOptions());
+        into.getParallelRuns().convention(from.getParallelRuns());
+        into.getResultsStore().convention(from.getResultsStore());
+        into.getWarmLauncher().convention(from.getWarmLauncher());
+        into.getIncrementalRuns().convention(from.getIncrementalRuns());
+        into.getAdaptiveIterations().convention(from.getAdaptiveIterations());
+        into.getMinWarmupIterations().convention(from.getMinWarmupIterations());
+        into.getMinIterations().convention(from.getMinIterations());
+        into.getAdaptiveWarmupCv().convention(from.getAdaptiveWarmupCv());
+        into.getAdaptivePrecision().convention(from.getAdaptivePrecision());
+        into.getPartialResultsFile().convention(from.getPartialResultsFile());
+        into.getResumable().convention(from.getResumable());
+        into.getAllocationBudgets().convention(from.getAllocationBudgets());
+        into.getAsyncProfilerLibrary().convention(from.getAsyncProfilerLibrary());
+        into.getAsyncProfilerEvent().convention(from.getAsyncProfilerEvent());
+        into.getAsyncProfilerInterval().convention(from.getAsyncProfilerInterval());
+        into.getAsyncProfilerOutput().convention(from.getAsyncProfilerOutput());
+        into.getAsyncProfilerResultsDirectory().convention(from.getAsyncProfilerResultsDirectory());
+        into.getJitDiagnostics().convention(from.getJitDiagnostics());
+        into.getJitDiagnosticsDirectory().convention(from.getJitDiagnosticsDirectory());
+        into.getJfr().convention(from.getJfr());
+        into.getJfrResultsDirectory().convention(from.getJfrResultsDirectory());
+        into.getParameterSweep().convention(from.getParameterSweep());
+        into.getSweepSamples().convention(from.getSweepSamples());
+        into.getSweepRefinements().convention(from.getSweepRefinements());
+        into.getScalability().convention(from.getScalability());
+        into.getScalabilityThreads().convention(from.getScalabilityThreads());
+        from.getBenchmarkOverrides().all(rule -> {
+            BenchmarkOverride copy = into.getBenchmarkOverrides().maybeCreate(rule.getName());
+            copy.getInclude().convention(rule.getInclude());
+            copy.getFork().convention(rule.getFork());
+            copy.getWarmupIterations().convention(rule.getWarmupIterations());
+            copy.getIterations().convention(rule.getIterations());
+            copy.getWarmup().convention(rule.getWarmup());
+            copy.getTimeOnIteration().convention(rule.getTimeOnIteration());
+            copy.getThreads().convention(rule.getThreads());
+            copy.getJvmArgs().convention(rule.getJvmArgs());
+        });
     }
 
 }
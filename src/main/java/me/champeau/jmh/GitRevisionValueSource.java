@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ValueSource;
+import org.gradle.api.provider.ValueSourceParameters;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecResult;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Provides the git revision checked out in a directory, suffixed with {@code -dirty} when tracked files have
+ * uncommitted changes, or no value if it is not a git repository.
+ */
+public abstract class GitRevisionValueSource implements ValueSource<String, GitRevisionValueSource.Params> {
+
+    @Inject
+    public abstract ExecOperations getExecOperations();
+
+    @Override
+    public String obtain() {
+        String revision = git("rev-parse", "HEAD");
+        if (revision == null || revision.isEmpty()) {
+            return null;
+        }
+        // untracked files are ignored, since a results store is typically kept in the working tree
+        String changes = git("status", "--porcelain", "--untracked-files=no");
+        return changes == null || changes.isEmpty() ? revision : revision + "-dirty";
+    }
+
+    /**
+     * Executes a git command in the working directory, returning its trimmed output, or null if it failed.
+     */
+    private String git(String... args) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            ExecResult result = getExecOperations().exec(spec -> {
+                spec.executable("git");
+                spec.args((Object[]) args);
+                spec.workingDir(getParameters().getWorkingDirectory().get().getAsFile());
+                spec.setStandardOutput(output);
+                spec.setErrorOutput(new ByteArrayOutputStream());
+                spec.setIgnoreExitValue(true);
+            });
+            if (result.getExitValue() != 0) {
+                return null;
+            }
+        } catch (RuntimeException e) {
+            // git is not installed
+            return null;
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+
+    public interface Params extends ValueSourceParameters {
+        DirectoryProperty getWorkingDirectory();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Tracks which benchmarks are affected by changes since the previous run, so that only these benchmarks are
+ * executed again while the results of the other benchmarks are reused. A benchmark is affected when its class,
+ * or any class it transitively depends on, changed, or when the environment of the run changed.
+ */
+class IncrementalBenchmarks {
+    private static final String STATE_FILE = "state.json";
+    private static final String RESULTS_FILE = "results.json";
+
+    private final File stateDir;
+    private final String environment;
+    private final ClassDependencies classes;
+    private final Map<String, String> fingerprints = new TreeMap<>();
+    private final Set<String> reused = new HashSet<>();
+
+    /**
+     * @param stateDir the directory where the state of the previous run is stored
+     * @param classesDirs the classes directories of the benchmarks and of the code they depend on
+     * @param environment a fingerprint of everything else the results depend on, such as JMH options,
+     * libraries or the JVM
+     */
+    IncrementalBenchmarks(File stateDir, Iterable<File> classesDirs, String environment) {
+        this.stateDir = stateDir;
+        this.environment = environment;
+        this.classes = new ClassDependencies(classesDirs);
+    }
+
+    /**
+     * Returns the benchmarks which need to be executed, among the selected ones.
+     */
+    List<String> affected(List<String> benchmarks) {
+        Map<?, ?> state = readState();
+        boolean sameEnvironment = environment.equals(state.get("environment"));
+        Object previous = state.get("benchmarks");
+        Map<?, ?> previousFingerprints = previous instanceof Map ? (Map<?, ?>) previous : Collections.emptyMap();
+        Set<String> previousResults = new HashSet<>();
+        for (Map<?, ?> result : previousResults()) {
+            previousResults.add(String.valueOf(result.get("benchmark")));
+        }
+        List<String> affected = new ArrayList<>();
+        for (String benchmark : benchmarks) {
+            String className = classOf(benchmark);
+            String fingerprint = fingerprints.computeIfAbsent(className, classes::fingerprint);
+            if (sameEnvironment && fingerprint != null
+                    && fingerprint.equals(previousFingerprints.get(className))
+                    && previousResults.contains(benchmark)) {
+                reused.add(benchmark);
+            } else {
+                affected.add(benchmark);
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Adds the previous results of the benchmarks which were not executed again to the results file, and
+     * records the state of this run.
+     */
+    void complete(File resultsFile) {
+        List<Object> results = new ArrayList<>();
+        for (Map<?, ?> result : previousResults()) {
+            if (reused.contains(String.valueOf(result.get("benchmark")))) {
+                results.add(result);
+            }
+        }
+        if (resultsFile.isFile()) {
+            Object current = new JsonSlurper().parse(resultsFile);
+            if (current instanceof List) {
+                results.addAll((List<?>) current);
+            }
+        }
+        String json = JsonOutput.prettyPrint(JsonOutput.toJson(results));
+        Map<String, String> completed = new TreeMap<>();
+        for (Object result : results) {
+            String className = classOf(String.valueOf(((Map<?, ?>) result).get("benchmark")));
+            String fingerprint = fingerprints.get(className);
+            if (fingerprint != null) {
+                completed.put(className, fingerprint);
+            }
+        }
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("environment", environment);
+        state.put("benchmarks", completed);
+        write(resultsFile, json);
+        write(new File(stateDir, RESULTS_FILE), json);
+        write(new File(stateDir, STATE_FILE), JsonOutput.prettyPrint(JsonOutput.toJson(state)));
+    }
+
+    private Map<?, ?> readState() {
+        File file = new File(stateDir, STATE_FILE);
+        if (!file.isFile()) {
+            return Collections.emptyMap();
+        }
+        Object state = new JsonSlurper().parse(file);
+        return state instanceof Map ? (Map<?, ?>) state : Collections.emptyMap();
+    }
+
+    private List<Map<?, ?>> previousResults() {
+        File file = new File(stateDir, RESULTS_FILE);
+        List<Map<?, ?>> results = new ArrayList<>();
+        if (file.isFile()) {
+            Object json = new JsonSlurper().parse(file);
+            if (json instanceof List) {
+                for (Object result : (List<?>) json) {
+                    if (result instanceof Map) {
+                        results.add((Map<?, ?>) result);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private static String classOf(String benchmark) {
+        int lastDot = benchmark.lastIndexOf('.');
+        return lastDot < 0 ? benchmark : benchmark.substring(0, lastDot);
+    }
+
+    private static void write(File file, String text) {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -15,9 +15,13 @@
  */
 package me.champeau.jmh;
 
+import groovy.json.JsonSlurper;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileSystemOperations;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.Property;
@@ -25,26 +29,62 @@ import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.options.Option;
 import org.gradle.work.DisableCachingByDefault;
 import org.gradle.jvm.toolchain.JavaLauncher;
 import org.gradle.process.ExecOperations;
+import org.gradle.workers.WorkerExecutor;
 
 import javax.inject.Inject;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * The JMH task is responsible for launching a JMH benchmark.
  */
 @DisableCachingByDefault(because = "Benchmark results depend on the runtime environment and should not be cached")
 public abstract class JMHTask extends DefaultTask implements JmhParameters {
-    private final static String JAVA_IO_TMPDIR = "java.io.tmpdir";
+    final static String JAVA_IO_TMPDIR = "java.io.tmpdir";
+    // the number of warmup and measurement iterations JMH executes by default
+    final static int JMH_DEFAULT_ITERATIONS = 5;
+    // the heap size reserved from the memory budget for each JMH process without -Xmx
+    private final static String DEFAULT_REQUIRED_HEAP = "1g";
+    private final static Pattern MAX_HEAP = Pattern.compile("-Xmx(\\d+[kKmMgGtT]?)");
+
+    private transient Set<String> unavailableProfilers;
+    // the JMH outputs to analyze, when JIT diagnostics are enabled
+    private transient List<File> jitOutputs;
+    // the names of the benchmark overrides in declaration order, in which rules are matched
+    private final List<String> overrideOrder = new ArrayList<>();
+
+    public JMHTask() {
+        getBenchmarkOverrides().whenObjectAdded(rule -> overrideOrder.add(rule.getName()));
+        getBenchmarkOverrides().whenObjectRemoved(rule -> overrideOrder.remove(rule.getName()));
+    }
 
     @Inject
     public abstract ExecOperations getExecOperations();
@@ -52,6 +92,42 @@ public abstract class JMHTask extends DefaultTask implements JmhParameters {
     @Inject
     public abstract ObjectFactory getObjects();
 
+    @Inject
+    public abstract WorkerExecutor getWorkerExecutor();
+
+    @Inject
+    public abstract FileSystemOperations getFileSystemOperations();
+
+    @Internal
+    public abstract Property<CpuSetService> getCpuSetService();
+
+    @Internal
+    public abstract Property<ConcurrentExecutionControlBuildService> getExecutionControl();
+
+    /**
+     * The revision of the sources, recorded with the results in the results store.
+     */
+    @Internal
+    @Optional
+    public abstract Property<String> getRevision();
+
+    /**
+     * The number of CPUs reserved from the CPU budget while this task executes. Defaults to the number of
+     * benchmark threads, multiplied by the number of parallel runs.
+     */
+    @Internal
+    @Optional
+    public abstract Property<Integer> getRequiredCpus();
+
+    /**
+     * The memory reserved from the memory budget while this task executes, using the JVM notation (for example
+     * {@code 4g}). Defaults to the maximum heap size declared in the JVM arguments of the benchmarks, or 1g when
+     * there is none, multiplied by the number of parallel runs.
+     */
+    @Internal
+    @Optional
+    public abstract Property<String> getRequiredMemory();
+
     @Classpath
     public abstract ConfigurableFileCollection getJmhClasspath();
 
@@ -59,8 +135,16 @@ public abstract class JMHTask extends DefaultTask implements JmhParameters {
     public abstract ConfigurableFileCollection getTestRuntimeClasspath();
 
     @Classpath
+    @Optional
     public abstract RegularFileProperty getJarArchive();
 
+    /**
+     * The compiled benchmarks, generated classes and resources, used instead of the JMH jar
+     * when benchmarks are executed from an exploded classpath.
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getBenchmarkClasspath();
+
     @OutputFile
     @Optional
     public abstract RegularFileProperty getHumanOutputFile();
@@ -68,6 +152,10 @@ public abstract class JMHTask extends DefaultTask implements JmhParameters {
     @OutputFile
     public abstract RegularFileProperty getResultsFile();
 
+    @OutputFile
+    @Optional
+    public abstract RegularFileProperty getPartialResultsFile();
+
     /**
      * Allows passing arbitrary JMH command line options at invocation time, e.g.
      * <pre>
@@ -82,35 +170,562 @@ public abstract class JMHTask extends DefaultTask implements JmhParameters {
     @Option(option = "jmhArgs", description = "Arbitrary JMH command line options to pass to the JMH runner, space separated.")
     public abstract Property<String> getJmhArgs();
 
+    /**
+     * The list of benchmarks generated by the JMH bytecode generator, used to compute the benchmarks of a shard.
+     */
+    @InputFile
+    @Optional
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getBenchmarkList();
+
+    /**
+     * The index of the shard to execute, starting at 0, which requires {@link #getShardCount()} to be set.
+     */
+    @Optional
+    @Input
+    @Option(option = "shardIndex", description = "The index of the shard of benchmarks to run, starting at 0.")
+    public abstract Property<Integer> getShardIndex();
+
+    /**
+     * The number of shards the benchmarks are split into. When set, only the benchmarks of the shard
+     * {@link #getShardIndex()} are executed, e.g.
+     * <pre>
+     *     ./gradlew jmh --shardIndex=2 --shardCount=8
+     * </pre>
+     */
+    @Optional
+    @Input
+    @Option(option = "shardCount", description = "The number of shards the benchmarks are split into.")
+    public abstract Property<Integer> getShardCount();
+
+    /**
+     * JMH results of previous runs, in JSON format. When present, shards are balanced using the durations
+     * estimated from these results instead of having the same number of benchmarks.
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract ConfigurableFileCollection getShardingHistory();
+
+    /**
+     * The classes directories of the benchmarks and of the code they exercise, used to find out which
+     * benchmarks are affected by a change when {@link #getIncrementalRuns()} is set.
+     */
+    @Internal
+    public abstract ConfigurableFileCollection getClassesDirs();
+
     @TaskAction
     public void callJmh() {
+        long timestamp = System.currentTimeMillis();
+        // the profilers of the extension are validated when the project is evaluated, those of the task only now
+        List<String> profilers = getProfilers().getOrElse(Collections.emptyList());
+        JmhProfilers.validate(profilers);
+        for (String profiler : JmhProfilers.missingProfilerClasses(profilers, computeClasspath())) {
+            getLogger().warn("Profiler class '{}' is not found on the classpath of the benchmarks", profiler);
+        }
+        Map<String, Integer> allocationBudgets = getAllocationBudgets().getOrElse(Collections.emptyMap());
+        if (!allocationBudgets.isEmpty() && !"json".equalsIgnoreCase(getResultFormat().get())) {
+            throw new InvalidUserDataException("Allocation budgets require the JSON result format");
+        }
+        if (getPartialResultsFile().isPresent()) {
+            File partialResultsFile = getPartialResultsFile().get().getAsFile();
+            getFileSystemOperations().delete(spec -> spec.delete(partialResultsFile));
+            partialResultsFile.getParentFile().mkdirs();
+        }
+        jitOutputs = null;
+        if (getJitDiagnostics().getOrElse(false)) {
+            if (getWarmLauncher().getOrElse(false) || getParallelRuns().getOrElse(1) > 1) {
+                getLogger().warn("JIT diagnostics are not supported with the warm launcher or parallel runs");
+            } else {
+                jitOutputs = new ArrayList<>();
+                getFileSystemOperations().delete(spec -> spec.delete(new File(getTemporaryDir(), "jit"), getJitDiagnosticsDirectory()));
+            }
+        }
+        if (isRecordingWithJfr()) {
+            getFileSystemOperations().delete(spec -> spec.delete(getJfrResultsDirectory()));
+        }
+        IncrementalBenchmarks incremental = incrementalBenchmarks();
+        boolean executed;
+        if (!getExecutionControl().isPresent()) {
+            executed = runBenchmarks(incremental);
+        } else {
+            ConcurrentExecutionControlBuildService.Reservation reservation = getExecutionControl().get()
+                    .reserve(getPath(), requiredCpus(), requiredMemory());
+            try {
+                executed = runBenchmarks(incremental);
+            } finally {
+                reservation.release();
+            }
+        }
+        if (executed) {
+            storeResults(timestamp);
+        }
+        if (incremental != null) {
+            // completed after storing results, so that reused results are not stored twice
+            incremental.complete(getResultsFile().get().getAsFile());
+        }
+        summarizeProfilers();
+        if (jitOutputs != null && executed) {
+            // the JMH output is only written to temporary files when there's no human output file
+            JitDiagnostics diagnostics = JitDiagnostics.parse(getHumanOutputFile().isPresent()
+                    ? Collections.singletonList(getHumanOutputFile().get().getAsFile())
+                    : jitOutputs);
+            File report = diagnostics.write(getJitDiagnosticsDirectory().get().getAsFile());
+            getLogger().lifecycle("JIT diagnostics of {} benchmarks written to {}", diagnostics.size(), report);
+        }
+        if (isRecordingWithJfr() && executed) {
+            File jfrResultsDirectory = getJfrResultsDirectory().get().getAsFile();
+            int summarized = JfrSummary.summarizeAll(jfrResultsDirectory);
+            getLogger().lifecycle("Flight Recorder summaries of {} benchmarks written to {}", summarized, jfrResultsDirectory);
+        }
+        if (getAsyncProfilerLibrary().isPresent()) {
+            getLogger().lifecycle("Async-profiler profiles written to {}", getAsyncProfilerResultsDirectory().get().getAsFile());
+        }
+        checkAllocationBudgets(allocationBudgets);
+    }
+
+    private void checkAllocationBudgets(Map<String, Integer> allocationBudgets) {
+        File resultsFile = getResultsFile().get().getAsFile();
+        if (allocationBudgets.isEmpty() || !resultsFile.isFile()) {
+            return;
+        }
+        Object results = new JsonSlurper().parse(resultsFile);
+        List<String> violations = AllocationBudgets.violations(
+                results instanceof List ? (List<?>) results : Collections.emptyList(), allocationBudgets);
+        if (!violations.isEmpty()) {
+            throw new GradleException("Allocation budgets exceeded:\n  " + String.join("\n  ", violations));
+        }
+    }
+
+    private IncrementalBenchmarks incrementalBenchmarks() {
+        if (!getIncrementalRuns().getOrElse(false)) {
+            return null;
+        }
+        if (!"json".equalsIgnoreCase(getResultFormat().get())) {
+            getLogger().warn("Incremental runs require the JSON result format, all benchmarks will be executed");
+            return null;
+        }
+        return new IncrementalBenchmarks(new File(getTemporaryDir(), "incremental"), getClassesDirs(), environmentFingerprint());
+    }
+
+    /**
+     * Computes a fingerprint of everything but the project classes the results depend on: the JMH options,
+     * the JVM and the libraries. Jars are identified by their path, size and last modification time. Code
+     * generated from the benchmark classes is left out, as it only changes when these classes change.
+     */
+    private String environmentFingerprint() {
+        MessageDigest digest = ClassDependencies.sha256();
+        List<String> args = collectArguments(Collections.emptyList());
+        digest.update(String.join("\n", args).getBytes(StandardCharsets.UTF_8));
+        digest.update(javaExecutable().getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        digest.update(new TreeMap<>(getEnvironment().get()).toString().getBytes(StandardCharsets.UTF_8));
+        Set<File> classesDirs = getClassesDirs().getFiles();
+        for (File file : getJmhClasspath().plus(getTestRuntimeClasspath())) {
+            if (classesDirs.contains(file)) {
+                continue;
+            }
+            digest.update(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+            if (file.isFile()) {
+                digest.update((file.length() + ":" + file.lastModified()).getBytes(StandardCharsets.UTF_8));
+            } else if (file.isDirectory()) {
+                getObjects().fileTree().from(file).visit(details -> {
+                    if (!details.isDirectory()) {
+                        digest.update(details.getRelativePath().getPathString().getBytes(StandardCharsets.UTF_8));
+                        digest.update((details.getSize() + ":" + details.getLastModified()).getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+            }
+        }
+        return ClassDependencies.toHex(digest.digest());
+    }
+
+    /**
+     * Appends the results of this run to the results store, which is only possible with JSON results.
+     */
+    private void storeResults(long timestamp) {
+        if (!getResultsStore().isPresent()) {
+            return;
+        }
+        File resultsFile = getResultsFile().get().getAsFile();
+        if (!"json".equalsIgnoreCase(getResultFormat().get()) || !resultsFile.isFile()) {
+            getLogger().info("Results are not stored because they are not available in JSON format");
+            return;
+        }
+        ResultsStore.Run run = new ResultsStore.Run(UUID.randomUUID().toString(), timestamp, getRevision().getOrNull(), getPath());
+        new ResultsStore(getResultsStore().get().getAsFile()).append(run, resultsFile);
+    }
+
+    private int requiredCpus() {
+        if (getRequiredCpus().isPresent()) {
+            return getRequiredCpus().get();
+        }
+        int threads = Math.max(getThreads().getOrElse(1),
+                getThreadGroups().getOrElse(Collections.emptyList()).stream().mapToInt(Integer::intValue).sum());
+        if (getScalability().getOrElse(false)) {
+            threads = Math.max(threads, ScalabilityRunner.threads(this).stream().mapToInt(Integer::intValue).max().orElse(1));
+        }
+        return threads * Math.max(1, getParallelRuns().getOrElse(1));
+    }
+
+    long requiredMemory() {
+        if (getRequiredMemory().isPresent()) {
+            return ConcurrentExecutionControlBuildService.parseMemory(getRequiredMemory().get());
+        }
+        String heap = DEFAULT_REQUIRED_HEAP;
+        List<String> jvmArgs = new ArrayList<>();
+        jvmArgs.addAll(getJvmArgsPrepend().getOrElse(Collections.emptyList()));
+        jvmArgs.addAll(getJvmArgs().getOrElse(Collections.emptyList()));
+        jvmArgs.addAll(getJvmArgsAppend().getOrElse(Collections.emptyList()));
+        for (String arg : jvmArgs) {
+            // arguments may be given as a single string of space separated arguments
+            for (String token : arg.trim().split("\\s+")) {
+                if (token.startsWith("-Xmx")) {
+                    Matcher matcher = MAX_HEAP.matcher(token);
+                    if (!matcher.matches()) {
+                        throw new InvalidUserDataException("Invalid maximum heap size '" + token + "' in the JVM arguments of task "
+                                + getPath() + ", expected a value such as -Xmx512m or -Xmx4g");
+                    }
+                    heap = matcher.group(1);
+                }
+            }
+        }
+        return ConcurrentExecutionControlBuildService.parseMemory(heap) * Math.max(1, getParallelRuns().getOrElse(1));
+    }
+
+    private boolean runBenchmarks(IncrementalBenchmarks incremental) {
+        checkExecutionModes();
+        List<String> benchmarks = null;
+        if (getShardIndex().isPresent() && !getShardCount().isPresent()) {
+            throw new InvalidUserDataException("A shard count must be set when the shard index is set");
+        }
+        if (getShardCount().isPresent()) {
+            benchmarks = computeShard();
+            if (benchmarks.isEmpty()) {
+                getLogger().lifecycle("Shard {} of {} doesn't contain any benchmark", getShardIndex().get(), getShardCount().get());
+                return false;
+            }
+            getLogger().lifecycle("Running {} benchmarks in shard {} of {}", benchmarks.size(), getShardIndex().get(), getShardCount().get());
+        }
+        if (incremental != null) {
+            List<String> selected = benchmarks != null ? benchmarks : selectBenchmarks();
+            benchmarks = incremental.affected(selected);
+            if (benchmarks.isEmpty()) {
+                getLogger().lifecycle("No benchmark is affected by changes, reusing the previous results");
+                getFileSystemOperations().delete(spec -> spec.delete(getResultsFile()));
+                return false;
+            }
+            getLogger().lifecycle("Running {} of {} benchmarks affected by changes", benchmarks.size(), selected.size());
+        }
+        int parallelRuns = getParallelRuns().getOrElse(1);
+        if (parallelRuns > 1 && !CpuSet.isPinningAvailable()) {
+            // concurrent processes which are not pinned would interfere with each other
+            getLogger().warn("Parallel runs require taskset or numactl to pin JMH processes to CPUs, benchmarks are executed in a single JMH process");
+            parallelRuns = 1;
+        }
+        BenchmarkRunner runner = createRunner(parallelRuns);
+        if (runner != null) {
+            runner.run(benchmarks != null ? benchmarks : selectBenchmarks());
+        } else {
+            // a single invocation, in which JMH selects the benchmarks unless they were restricted above
+            runJmh(collectArguments(benchmarks), true);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the runner of the execution mode of this task, or null if the benchmarks are executed in a single
+     * JMH invocation. {@link #checkExecutionModes()} makes sure that at most one mode is set.
+     */
+    private BenchmarkRunner createRunner(int parallelRuns) {
+        if (parallelRuns > 1) {
+            return new ParallelRunsRunner(this, parallelRuns);
+        }
+        if (getScalability().getOrElse(false)) {
+            return new ScalabilityRunner(this);
+        }
+        if (getParameterSweep().isPresent()) {
+            return new ParameterSweepRunner(this);
+        }
+        if (!getBenchmarkOverrides().isEmpty()) {
+            return new BenchmarkOverridesRunner(this, overrideOrder);
+        }
+        if (getAdaptiveIterations().getOrElse(false)) {
+            return new AdaptiveIterationsRunner(this);
+        }
+        if (getResumable().getOrElse(false)) {
+            return new ResumableRunner(this);
+        }
+        return null;
+    }
+
+    /**
+     * Fails when several options splitting the benchmarks into JMH invocations are set, since only one of them
+     * can decide how the benchmarks are executed.
+     */
+    private void checkExecutionModes() {
+        List<String> modes = new ArrayList<>();
+        if (getParallelRuns().getOrElse(1) > 1) {
+            modes.add("parallelRuns");
+            if (getResumable().getOrElse(false)) {
+                // concurrent runs are not checkpointed
+                modes.add("resumable");
+            }
+        }
+        if (getScalability().getOrElse(false)) {
+            modes.add("scalability");
+        }
+        if (getParameterSweep().isPresent()) {
+            modes.add("parameterSweep");
+        }
+        if (!getBenchmarkOverrides().isEmpty()) {
+            modes.add("benchmarkOverrides");
+        }
+        if (getAdaptiveIterations().getOrElse(false)) {
+            modes.add("adaptiveIterations");
+        }
+        if (modes.size() > 1) {
+            throw new InvalidUserDataException("The " + String.join(", ", modes.subList(0, modes.size() - 1)) + " and "
+                    + modes.get(modes.size() - 1) + " options of task " + getPath() + " cannot be combined");
+        }
+    }
+
+    void runJmh(List<String> args, boolean partialResults) {
+        getLogger().info("Running JMH with arguments: " + args);
+        if (getWarmLauncher().getOrElse(false)) {
+            new WarmLauncher(this).launch(args);
+            return;
+        }
+        // the human-readable output is written by the plugin, so that progress can be followed from it
+        List<String> jmhArgs = new ArrayList<>(args);
+        File humanOutputFile = null;
+        int humanOutput = jmhArgs.indexOf("-o");
+        if (humanOutput >= 0 && humanOutput + 1 < jmhArgs.size()) {
+            humanOutputFile = new File(jmhArgs.remove(humanOutput + 1));
+            jmhArgs.remove(humanOutput);
+            humanOutputFile.getParentFile().mkdirs();
+        }
+        if (jitOutputs != null && partialResults && humanOutputFile == null) {
+            // the compilation log is too large to be printed on the console
+            humanOutputFile = new File(getTemporaryDir(), "jit/output-" + jitOutputs.size() + ".txt");
+            humanOutputFile.getParentFile().mkdirs();
+            getLogger().lifecycle("Writing the JMH output to {}", humanOutputFile);
+            jitOutputs.add(humanOutputFile);
+        }
+        File partialResultsFile = partialResults && getPartialResultsFile().isPresent()
+                ? getPartialResultsFile().get().getAsFile()
+                : null;
+        try (OutputStream output = humanOutputFile == null ? null : new BufferedOutputStream(new FileOutputStream(humanOutputFile));
+             JmhProgressStream progress = new JmhProgressStream(output == null ? System.out : output, getLogger(), partialResultsFile)) {
+            getExecOperations().javaexec(spec -> {
+                spec.setClasspath(computeClasspath());
+                spec.getMainClass().set("org.openjdk.jmh.Main");
+                spec.args(jmhArgs);
+                spec.systemProperty(JAVA_IO_TMPDIR, getTemporaryDir().getAbsolutePath());
+                spec.environment(getEnvironment().get());
+                spec.setStandardOutput(progress);
+                Provider<JavaLauncher> javaLauncher = getJavaLauncher();
+                if (javaLauncher.isPresent()) {
+                    spec.executable(javaLauncher.get().getExecutablePath().getAsFile());
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Executes JMH once for each of the given arguments, writing results into a subdirectory of the given
+     * directory, then merges the results of all the invocations.
+     */
+    void runInGroups(File dir, Map<String, List<String>> groupArgs) {
+        File checkpointDir = new File(getTemporaryDir(), "checkpoint");
+        BenchmarkCheckpoint checkpoint = getResumable().getOrElse(false)
+                ? new BenchmarkCheckpoint(checkpointDir, getBenchmarkList().isPresent() ? getBenchmarkList().get().getAsFile() : null, getClassesDirs())
+                : null;
+        File resultsFile = getResultsFile().get().getAsFile();
+        List<File> results = new ArrayList<>();
+        List<File> humanOutputs = new ArrayList<>();
+        int group = 0;
+        for (Map.Entry<String, List<String>> entry : groupArgs.entrySet()) {
+            List<String> args = entry.getValue();
+            String key = null;
+            File runDir;
+            if (checkpoint != null) {
+                key = checkpoint.key(args);
+                runDir = checkpoint.directory(key);
+            } else {
+                runDir = new File(dir, "run-" + group++);
+            }
+            File result = new File(runDir, resultsFile.getName());
+            results.add(result);
+            File humanOutput = null;
+            if (getHumanOutputFile().isPresent()) {
+                humanOutput = new File(runDir, getHumanOutputFile().get().getAsFile().getName());
+                humanOutputs.add(humanOutput);
+            }
+            if (checkpoint != null && checkpoint.isCompleted(key)) {
+                getLogger().lifecycle("Reusing the checkpointed results of {}", entry.getKey());
+                continue;
+            }
+            getFileSystemOperations().delete(spec -> spec.delete(runDir));
+            runDir.mkdirs();
+            overrideOption(args, "-rff", result.getAbsolutePath());
+            if (humanOutput != null) {
+                overrideOption(args, "-o", humanOutput.getAbsolutePath());
+            }
+            getLogger().lifecycle("Running {}", entry.getKey());
+            runJmh(args, true);
+            if (checkpoint != null) {
+                checkpoint.completed(key, entry.getKey());
+            }
+        }
+        BenchmarkResultFiles.merge(results, resultsFile, getResultFormat().get());
+        if (getHumanOutputFile().isPresent()) {
+            BenchmarkResultFiles.merge(humanOutputs, getHumanOutputFile().get().getAsFile(), "text");
+        }
+        if (checkpoint != null) {
+            getFileSystemOperations().delete(spec -> spec.delete(checkpointDir));
+        }
+    }
+
+    static void overrideOption(List<String> args, String option, Provider<?> value) {
+        if (value.isPresent()) {
+            overrideOption(args, option, String.valueOf(value.get()));
+        }
+    }
+
+    /**
+     * Sets the value of an option in the JMH arguments, whatever the value looks like, unlike
+     * {@link #applyCliArgs(List, String[])} which expects values not to start with a dash.
+     */
+    static void overrideOption(List<String> args, String option, String value) {
+        int idx = args.indexOf(option);
+        if (idx >= 0 && idx + 1 < args.size()) {
+            args.set(idx + 1, value);
+        } else {
+            args.add(option);
+            args.add(value);
+        }
+    }
+
+    /**
+     * Collects the JMH arguments, restricted to the given benchmarks unless null.
+     */
+    List<String> collectArguments(List<String> benchmarks) {
         List<String> args = new ArrayList<>();
-        ParameterConverter.collectParameters(this, args);
+        if (benchmarks != null) {
+            ParameterConverter.collectParameters(this, BenchmarkShards.exactIncludes(benchmarks), args);
+        } else {
+            ParameterConverter.collectParameters(this, args);
+        }
         if (getJmhArgs().isPresent()) {
             String raw = getJmhArgs().get();
             if (!raw.trim().isEmpty()) {
                 applyCliArgs(args, raw.trim().split("\\s+"));
             }
         }
-        getLogger().info("Running JMH with arguments: " + args);
-        getExecOperations().javaexec(spec -> {
-            spec.setClasspath(computeClasspath());
-            spec.getMainClass().set("org.openjdk.jmh.Main");
-            spec.args(args);
-            spec.systemProperty(JAVA_IO_TMPDIR, getTemporaryDir().getAbsolutePath());
-            spec.environment(getEnvironment().get());
-            Provider<JavaLauncher> javaLauncher = getJavaLauncher();
-            if (javaLauncher.isPresent()) {
-                spec.executable(javaLauncher.get().getExecutablePath().getAsFile());
+        if (!getAllocationBudgets().getOrElse(Collections.emptyMap()).isEmpty()
+                && getProfilers().getOrElse(Collections.emptyList()).stream().noneMatch(p -> "gc".equals(JmhProfilers.nameOf(p)))) {
+            // allocation budgets are checked against the metrics of the gc profiler
+            args.add("-prof");
+            args.add("gc");
+        }
+        if (getAsyncProfilerLibrary().isPresent()
+                && getProfilers().getOrElse(Collections.emptyList()).stream().noneMatch(p -> "async".equals(JmhProfilers.nameOf(p)))) {
+            args.add("-prof");
+            args.add(AsyncProfiler.profilerOption(
+                    AsyncProfiler.resolveLibrary(getAsyncProfilerLibrary().get().getAsFile()),
+                    getAsyncProfilerEvent().get(),
+                    getAsyncProfilerInterval().getOrNull(),
+                    getAsyncProfilerOutput().get(),
+                    getAsyncProfilerResultsDirectory().get().getAsFile()));
+        }
+        if (isRecordingWithJfr()) {
+            args.add("-prof");
+            args.add("jfr:dir=" + getJfrResultsDirectory().get().getAsFile().getAbsolutePath() + ";configName=profile");
+        }
+        if (jitOutputs != null) {
+            int idx = args.indexOf("-jvmArgsAppend");
+            String jitArgs = String.join(" ", JitDiagnostics.JVM_ARGS);
+            if (idx >= 0 && idx + 1 < args.size()) {
+                args.set(idx + 1, args.get(idx + 1) + " " + jitArgs);
+            } else {
+                args.add("-jvmArgsAppend");
+                args.add(jitArgs);
+            }
+        }
+        Set<String> unavailable = unavailableProfilers();
+        for (int i = args.size() - 2; i >= 0; i--) {
+            if ("-prof".equals(args.get(i)) && unavailable.contains(JmhProfilers.nameOf(args.get(i + 1)))) {
+                args.remove(i + 1);
+                args.remove(i);
             }
-        });
+        }
+        return args;
+    }
+
+    /**
+     * Tells whether benchmarks are recorded by the plugin, which leaves recordings alone when the {@code jfr}
+     * profiler is already configured.
+     */
+    private boolean isRecordingWithJfr() {
+        return getJfr().getOrElse(false)
+                && getProfilers().getOrElse(Collections.emptyList()).stream().noneMatch(p -> "jfr".equals(JmhProfilers.nameOf(p)));
+    }
+
+    /**
+     * Returns the configured profilers which cannot be used on this host, because they need {@code perf}
+     * and it isn't available.
+     */
+    private Set<String> unavailableProfilers() {
+        if (unavailableProfilers == null) {
+            Set<String> unavailable = new LinkedHashSet<>();
+            for (String profiler : getProfilers().getOrElse(Collections.emptyList())) {
+                String name = JmhProfilers.nameOf(profiler);
+                if (JmhProfilers.PERF.contains(name) && !JmhProfilers.isPerfAvailable()) {
+                    getLogger().warn("The {} profiler is disabled because perf is not available on this host", name);
+                    unavailable.add(name);
+                }
+            }
+            unavailableProfilers = unavailable;
+        }
+        return unavailableProfilers;
+    }
+
+    /**
+     * Writes a table of the secondary metrics of each benchmark next to the results file, which is only
+     * possible with JSON results.
+     */
+    private void summarizeProfilers() {
+        List<String> profilers = getProfilers().getOrElse(Collections.emptyList());
+        if (profilers.stream().allMatch(p -> unavailableProfilers().contains(JmhProfilers.nameOf(p)))) {
+            return;
+        }
+        File resultsFile = getResultsFile().get().getAsFile();
+        if (!"json".equalsIgnoreCase(getResultFormat().get()) || !resultsFile.isFile()) {
+            getLogger().info("Profiler metrics are not summarized because results are not available in JSON format");
+            return;
+        }
+        String name = resultsFile.getName();
+        String baseName = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+        File summary = new File(resultsFile.getParentFile(), baseName + "-profilers.txt");
+        JmhProfilers.writeSummary(resultsFile, summary);
+        getLogger().lifecycle("Profiler metrics summarized in {}", summary);
+    }
+
+    File javaExecutable() {
+        Provider<JavaLauncher> javaLauncher = getJavaLauncher();
+        if (javaLauncher.isPresent()) {
+            return javaLauncher.get().getExecutablePath().getAsFile();
+        }
+        File java = new File(System.getProperty("java.home"), "bin/java");
+        return java.exists() ? java : new File(System.getProperty("java.home"), "bin/java.exe");
     }
 
     /**
      * Applies CLI tokens to the args list: matching flags get their values replaced,
      * presence-only flags that appear in CLI are kept; new flags are appended.
      */
-    private static void applyCliArgs(List<String> args, String[] tokens) {
+    static void applyCliArgs(List<String> args, String[] tokens) {
         // presence-only flags (no value)
         Set<String> presenceFlags = new LinkedHashSet<>(Arrays.asList(
                 "-l", "-lp", "-lprof", "-lrf", "-h", "-hh"));
@@ -148,10 +763,37 @@ public abstract class JMHTask extends DefaultTask implements JmhParameters {
         }
     }
 
-    private FileCollection computeClasspath() {
+    private List<String> computeShard() {
+        int shardCount = getShardCount().get();
+        if (shardCount < 1) {
+            throw new InvalidUserDataException("The shard count must be at least 1, but was " + shardCount);
+        }
+        if (!getShardIndex().isPresent()) {
+            throw new InvalidUserDataException("A shard index must be set when the shard count is set");
+        }
+        int shardIndex = getShardIndex().get();
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new InvalidUserDataException("The shard index must be between 0 and " + (shardCount - 1) + ", but was " + shardIndex);
+        }
+        Map<String, Double> durations = BenchmarkShards.estimateDurations(getShardingHistory());
+        return BenchmarkShards.shard(selectBenchmarks(), shardIndex, shardCount, durations);
+    }
+
+    private List<String> selectBenchmarks() {
+        if (!getBenchmarkList().isPresent()) {
+            throw new GradleException("Benchmarks cannot be split because the benchmark list is not set");
+        }
+        return BenchmarkShards.select(
+                BenchmarkListFile.readBenchmarks(getBenchmarkList().get().getAsFile()),
+                getIncludes().getOrElse(Collections.emptyList()),
+                getExcludes().getOrElse(Collections.emptyList()));
+    }
+
+    FileCollection computeClasspath() {
         ConfigurableFileCollection classpath = getObjects().fileCollection();
         classpath.from(getJmhClasspath());
         classpath.from(getJarArchive());
+        classpath.from(getBenchmarkClasspath());
         classpath.from(getTestRuntimeClasspath());
         return classpath;
     }
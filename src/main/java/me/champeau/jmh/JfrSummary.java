@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Summarizes the Flight Recorder recordings of each benchmark: GC pauses, allocations by class, lock contention
+ * and the frames on which the CPU spends the most time.
+ */
+class JfrSummary {
+    static final String SUMMARY_FILE = "summary.txt";
+
+    // number of entries listed in each section of a summary
+    private static final int TOP = 10;
+
+    private int gcCount;
+    private Duration gcPauses = Duration.ZERO;
+    private Duration longestGcPause = Duration.ZERO;
+    private final Map<String, Long> sampledAllocations = new HashMap<>();
+    private final Map<String, Long> tlabAllocations = new HashMap<>();
+    private final Map<String, Integer> lockEvents = new HashMap<>();
+    private final Map<String, Duration> lockDurations = new HashMap<>();
+    private final Map<String, Integer> cpuSamples = new HashMap<>();
+    private int totalCpuSamples;
+
+    /**
+     * Writes a summary next to the recordings of each benchmark, found in the subdirectories of the given
+     * directory, and returns the number of benchmarks which were summarized.
+     */
+    static int summarizeAll(File recordingsDir) {
+        File[] benchmarkDirs = recordingsDir.listFiles(File::isDirectory);
+        int summarized = 0;
+        if (benchmarkDirs == null) {
+            return summarized;
+        }
+        for (File benchmarkDir : benchmarkDirs) {
+            File[] recordings = benchmarkDir.listFiles((dir, name) -> name.endsWith(".jfr"));
+            if (recordings == null || recordings.length == 0) {
+                continue;
+            }
+            JfrSummary summary = new JfrSummary();
+            for (File recording : recordings) {
+                summary.read(recording);
+            }
+            summary.write(new File(benchmarkDir, SUMMARY_FILE));
+            summarized++;
+        }
+        return summarized;
+    }
+
+    void read(File recording) {
+        try (RecordingFile file = new RecordingFile(recording.toPath())) {
+            while (file.hasMoreEvents()) {
+                accept(file.readEvent());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void accept(RecordedEvent event) {
+        switch (event.getEventType().getName()) {
+            case "jdk.GarbageCollection":
+                gcCount++;
+                gcPauses = gcPauses.plus(event.getDuration("sumOfPauses"));
+                if (event.getDuration("longestPause").compareTo(longestGcPause) > 0) {
+                    longestGcPause = event.getDuration("longestPause");
+                }
+                break;
+            case "jdk.ObjectAllocationSample":
+                sampledAllocations.merge(className(event.getClass("objectClass")), event.getLong("weight"), Long::sum);
+                break;
+            case "jdk.ObjectAllocationInNewTLAB":
+                tlabAllocations.merge(className(event.getClass("objectClass")), event.getLong("tlabSize"), Long::sum);
+                break;
+            case "jdk.ObjectAllocationOutsideTLAB":
+                tlabAllocations.merge(className(event.getClass("objectClass")), event.getLong("allocationSize"), Long::sum);
+                break;
+            case "jdk.JavaMonitorEnter":
+                lock(className(event.getClass("monitorClass")), event.getDuration());
+                break;
+            case "jdk.ThreadPark":
+                lock(className(event.getClass("parkedClass")), event.getDuration());
+                break;
+            case "jdk.ExecutionSample":
+                String frame = topFrame(event.getStackTrace());
+                if (frame != null) {
+                    cpuSamples.merge(frame, 1, Integer::sum);
+                    totalCpuSamples++;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void lock(String monitor, Duration duration) {
+        lockEvents.merge(monitor, 1, Integer::sum);
+        lockDurations.merge(monitor, duration, Duration::plus);
+    }
+
+    private static String className(RecordedClass type) {
+        return type == null ? "<unknown>" : typeName(type.getName());
+    }
+
+    /**
+     * Converts the binary name of a class, such as {@code [Ljava.lang.String;}, to its Java name.
+     */
+    static String typeName(String binaryName) {
+        int dimensions = 0;
+        while (dimensions < binaryName.length() && binaryName.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions == 0) {
+            return binaryName;
+        }
+        String element = binaryName.substring(dimensions);
+        switch (element) {
+            case "Z":
+                element = "boolean";
+                break;
+            case "B":
+                element = "byte";
+                break;
+            case "C":
+                element = "char";
+                break;
+            case "S":
+                element = "short";
+                break;
+            case "I":
+                element = "int";
+                break;
+            case "J":
+                element = "long";
+                break;
+            case "F":
+                element = "float";
+                break;
+            case "D":
+                element = "double";
+                break;
+            default:
+                element = element.substring(1, element.length() - 1);
+        }
+        StringBuilder name = new StringBuilder(element);
+        for (int i = 0; i < dimensions; i++) {
+            name.append("[]");
+        }
+        return name.toString();
+    }
+
+    private static String topFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return null;
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.isJavaFrame()) {
+                return className(frame.getMethod().getType()) + "." + frame.getMethod().getName();
+            }
+        }
+        return null;
+    }
+
+    void write(File summary) {
+        // allocation samples are preferred, TLAB events are only recorded by default before JDK 16
+        Map<String, Long> allocations = sampledAllocations.isEmpty() ? tlabAllocations : sampledAllocations;
+        try (Writer writer = Files.newBufferedWriter(summary.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(String.format(Locale.ROOT, "GC pauses: %d, total %s, longest %s%n",
+                    gcCount, format(gcPauses), format(longestGcPause)));
+            writer.write("\nAllocation by class:\n");
+            writeNoneIfEmpty(writer, allocations);
+            for (String type : top(allocations, Comparator.naturalOrder())) {
+                writer.write(String.format(Locale.ROOT, "  %-60s %s%n", type, formatBytes(allocations.get(type))));
+            }
+            writer.write("\nLock contention:\n");
+            writeNoneIfEmpty(writer, lockDurations);
+            for (String monitor : top(lockDurations, Comparator.naturalOrder())) {
+                writer.write(String.format(Locale.ROOT, "  %-60s %d events, %s%n",
+                        monitor, lockEvents.get(monitor), format(lockDurations.get(monitor))));
+            }
+            writer.write("\nTop CPU frames:\n");
+            writeNoneIfEmpty(writer, cpuSamples);
+            for (String frame : top(cpuSamples, Comparator.naturalOrder())) {
+                int samples = cpuSamples.get(frame);
+                writer.write(String.format(Locale.ROOT, "  %-60s %d samples (%.1f%%)%n",
+                        frame, samples, 100.0 * samples / totalCpuSamples));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNoneIfEmpty(Writer writer, Map<?, ?> values) throws IOException {
+        if (values.isEmpty()) {
+            writer.write("  none\n");
+        }
+    }
+
+    private static <V> List<String> top(Map<String, V> values, Comparator<V> order) {
+        return values.entrySet().stream()
+                .sorted(Map.Entry.<String, V>comparingByValue(order).reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(TOP)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static String format(Duration duration) {
+        return String.format(Locale.ROOT, "%.3f ms", duration.toNanos() / 1_000_000.0);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes >= 1L << 30) {
+            return String.format(Locale.ROOT, "%.1f GB", bytes / (double) (1L << 30));
+        }
+        if (bytes >= 1L << 20) {
+            return String.format(Locale.ROOT, "%.1f MB", bytes / (double) (1L << 20));
+        }
+        if (bytes >= 1L << 10) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / (double) (1L << 10));
+        }
+        return bytes + " B";
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Condenses the output of {@code -XX:+PrintCompilation -XX:+PrintInlining}, found in the JMH output, into a report
+ * of the methods which failed to inline, were deoptimized, or were only compiled on stack replacement, for each
+ * benchmark.
+ */
+class JitDiagnostics {
+    static final List<String> JVM_ARGS = Arrays.asList(
+            "-XX:+UnlockDiagnosticVMOptions", "-XX:+PrintCompilation", "-XX:+PrintInlining");
+
+    private static final Pattern COMPILATION = Pattern.compile(
+            "\\s*\\d+\\s+\\d+\\s([%sbn! ]*)(\\d)?\\s+([\\w$.]+::[\\w$<>]+)(?:\\s+@\\s+\\d+)?\\s+\\(\\d+ bytes\\)(.*)");
+    private static final Pattern INLINING = Pattern.compile(
+            "\\s*[!m]*\\s*@\\s+\\d+\\s+([\\w$.]+::[\\w$<>]+)\\s+\\((\\d+) bytes\\)\\s+(.*)");
+    private static final Pattern PARAMETER = Pattern.compile("(\\w+) = ([^,)]*)");
+    private static final List<String> JDK_PACKAGES = Arrays.asList("java.", "javax.", "jdk.", "sun.", "com.sun.");
+
+    private final Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+
+    /**
+     * Parses JMH outputs, which must have been produced with the {@link #JVM_ARGS} appended to the JVM arguments.
+     */
+    static JitDiagnostics parse(List<File> outputs) {
+        JitDiagnostics diagnostics = new JitDiagnostics();
+        for (File output : outputs) {
+            if (!output.isFile()) {
+                continue;
+            }
+            try {
+                diagnostics.parseLines(Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return diagnostics;
+    }
+
+    private void parseLines(List<String> lines) {
+        String mode = null;
+        String name = null;
+        Map<String, String> params = new LinkedHashMap<>();
+        Benchmark current = null;
+        for (String line : lines) {
+            if (line.startsWith("# Benchmark mode: ")) {
+                mode = JmhProgressStream.shortMode(line.substring("# Benchmark mode: ".length()));
+            } else if (line.startsWith("# Benchmark: ")) {
+                name = line.substring("# Benchmark: ".length()).trim();
+                params = new LinkedHashMap<>();
+                current = null;
+            } else if (line.startsWith("# Parameters: ")) {
+                Matcher matcher = PARAMETER.matcher(line);
+                while (matcher.find()) {
+                    params.put(matcher.group(1), matcher.group(2).trim());
+                }
+            } else if (name != null) {
+                if (current == null) {
+                    current = benchmark(name, mode, params);
+                }
+                current.parse(line);
+            }
+        }
+    }
+
+    private Benchmark benchmark(String name, String mode, Map<String, String> params) {
+        String id = name + (params.isEmpty() ? "" : " " + params) + " (" + mode + ")";
+        StringBuilder fileName = new StringBuilder(name).append('-').append(mode);
+        params.forEach((key, value) -> fileName.append('-').append(key).append('-').append(value));
+        return benchmarks.computeIfAbsent(id, k -> new Benchmark(fileName.toString().replaceAll("[^\\w.-]", "_")));
+    }
+
+    /**
+     * Writes the compilation log of each benchmark, and the report of all of them, into the given directory.
+     */
+    File write(File directory) {
+        directory.mkdirs();
+        File report = new File(directory, "jit-report.txt");
+        try (Writer writer = Files.newBufferedWriter(report.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Benchmark> entry : benchmarks.entrySet()) {
+                Benchmark benchmark = entry.getValue();
+                Files.write(new File(directory, benchmark.fileName + ".log").toPath(), benchmark.log, StandardCharsets.UTF_8);
+                writer.write(entry.getKey() + "\n");
+                benchmark.report(writer);
+                writer.write("\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return report;
+    }
+
+    int size() {
+        return benchmarks.size();
+    }
+
+    private static boolean isJdk(String method) {
+        return JDK_PACKAGES.stream().anyMatch(method::startsWith);
+    }
+
+    private static boolean isInlined(String decision) {
+        return decision.startsWith("inline") || decision.contains("intrinsic") || decision.startsWith("accessor");
+    }
+
+    private static class Benchmark {
+        private final String fileName;
+        private final List<String> log = new ArrayList<>();
+        private final Map<String, Integer> failedInlining = new TreeMap<>();
+        private final Map<String, Integer> deoptimizations = new TreeMap<>();
+        private final Set<String> osrCompiled = new TreeSet<>();
+        private final Set<String> compiled = new TreeSet<>();
+        private String compiling;
+
+        private Benchmark(String fileName) {
+            this.fileName = fileName;
+        }
+
+        private void parse(String line) {
+            Matcher matcher;
+            if ((matcher = COMPILATION.matcher(line)).matches()) {
+                log.add(line);
+                String method = matcher.group(3);
+                compiling = method;
+                if (matcher.group(4).contains("made not entrant")) {
+                    deoptimizations.merge(method, 1, Integer::sum);
+                } else if (matcher.group(1).contains("%")) {
+                    osrCompiled.add(method);
+                } else if (!matcher.group(4).contains("made zombie")) {
+                    compiled.add(method);
+                }
+            } else if ((matcher = INLINING.matcher(line)).matches()) {
+                log.add(line);
+                String callee = matcher.group(1);
+                String decision = matcher.group(3).trim();
+                if (compiling != null && !isInlined(decision) && !(isJdk(callee) && isJdk(compiling))) {
+                    String reason = decision.startsWith("failed to inline:") ? decision.substring("failed to inline:".length()).trim() : decision;
+                    failedInlining.merge(callee + " (" + matcher.group(2) + " bytes) into " + compiling + ": " + reason, 1, Integer::sum);
+                }
+            }
+        }
+
+        private void report(Writer writer) throws IOException {
+            List<String> osrOnly = new ArrayList<>();
+            for (String method : osrCompiled) {
+                if (!compiled.contains(method) && !isJdk(method)) {
+                    osrOnly.add(method);
+                }
+            }
+            Map<String, Integer> deoptimized = new TreeMap<>(deoptimizations);
+            deoptimized.keySet().removeIf(JitDiagnostics::isJdk);
+            if (failedInlining.isEmpty() && deoptimized.isEmpty() && osrOnly.isEmpty()) {
+                writer.write("  No failed inlining, deoptimization or OSR-only compilation\n");
+                return;
+            }
+            if (!failedInlining.isEmpty()) {
+                writer.write("  Failed inlining:\n");
+                for (Map.Entry<String, Integer> entry : failedInlining.entrySet()) {
+                    writer.write("    " + entry.getKey() + times(entry.getValue()) + "\n");
+                }
+            }
+            if (!deoptimized.isEmpty()) {
+                writer.write("  Deoptimizations:\n");
+                for (Map.Entry<String, Integer> entry : deoptimized.entrySet()) {
+                    writer.write("    " + entry.getKey() + ": made not entrant" + times(entry.getValue()) + "\n");
+                }
+            }
+            if (!osrOnly.isEmpty()) {
+                writer.write("  OSR-only compilations:\n");
+                for (String method : osrOnly) {
+                    writer.write("    " + method + "\n");
+                }
+            }
+        }
+
+        private static String times(int count) {
+            return count > 1 ? " (" + count + " times)" : "";
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.process.ExecOperations;
+import org.gradle.workers.WorkAction;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Runs the JMH bytecode generator for a single classes directory in a forked JVM.
+ */
+public abstract class JmhBytecodeGeneratorForkAction implements WorkAction<JmhBytecodeGeneratorForkAction.Params> {
+
+    @Inject
+    public abstract ExecOperations getExecOperations();
+
+    @Override
+    public void execute() {
+        Params params = getParameters();
+        getExecOperations().javaexec(spec -> {
+            spec.getMainClass().set(JmhBytecodeGeneratorTask.GENERATOR_MAIN_CLASS);
+            spec.classpath(params.getClasspath());
+            spec.args(
+                    params.getClassesDir().get().getAsFile(),
+                    params.getGeneratedSourcesDir().get().getAsFile(),
+                    params.getGeneratedResourcesDir().get().getAsFile(),
+                    params.getGeneratorType().get()
+            );
+            if (params.getQuiet().get()) {
+                spec.setStandardOutput(new ByteArrayOutputStream());
+            }
+            spec.jvmArgs(params.getJvmArgs().get());
+            if (params.getExecutable().isPresent()) {
+                spec.executable(params.getExecutable().get().getAsFile());
+            }
+        });
+    }
+
+    public interface Params extends JmhBytecodeGeneratorWorkAction.Params {
+        ListProperty<String> getJvmArgs();
+
+        RegularFileProperty getExecutable();
+
+        Property<Boolean> getQuiet();
+    }
+}
@@ -16,26 +16,53 @@
 package me.champeau.jmh;
 
 import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.JavaVersion;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileType;
+import org.gradle.api.logging.LogLevel;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.*;
 import org.gradle.jvm.toolchain.JavaLauncher;
 import org.gradle.process.ExecOperations;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
 
 import javax.inject.Inject;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.OutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
 
 @CacheableTask
 public abstract class JmhBytecodeGeneratorTask extends DefaultTask implements WithJavaToolchain {
+    static final String GENERATOR_MAIN_CLASS = "org.openjdk.jmh.generators.bytecode.JmhBytecodeGenerator";
+
+    private static final String GENERATED_PACKAGE = "jmh_generated";
+    private static final byte[] JMH_ANNOTATIONS = "Lorg/openjdk/jmh/annotations/".getBytes(StandardCharsets.US_ASCII);
 
     @Inject
     public abstract ExecOperations getExecOperations();
 
+    @Inject
+    public abstract WorkerExecutor getWorkerExecutor();
+
     @Input
     public abstract ListProperty<String> getJvmArgs();
 
@@ -48,6 +75,7 @@ public abstract class JmhBytecodeGeneratorTask extends DefaultTask implements Wi
     @Classpath
     public abstract ConfigurableFileCollection getRuntimeClasspath();
 
+    @Incremental
     @Classpath
     public abstract ConfigurableFileCollection getClassesDirsToProcess();
 
@@ -57,38 +85,399 @@ public abstract class JmhBytecodeGeneratorTask extends DefaultTask implements Wi
     @OutputDirectory
     public abstract DirectoryProperty getGeneratedResourcesDir();
 
+    /**
+     * Runs the generator inside the Gradle daemon, using the Worker API with classloader isolation,
+     * instead of forking a JVM for each classes directory. The generator is forked anyway when JVM
+     * arguments are configured on this task, or when its Java toolchain is more recent than the JVM
+     * of the daemon, which may not be able to load the benchmark classes.
+     */
+    @Internal
+    public abstract Property<Boolean> getInProcess();
+
     @TaskAction
-    public void generate() {
+    public void generate(InputChanges inputChanges) {
+        File generatedSourcesDir = getGeneratedSourcesDir().get().getAsFile();
+        File generatedResourcesDir = getGeneratedResourcesDir().get().getAsFile();
+        if (inputChanges.isIncremental() && generateIncrementally(inputChanges, generatedSourcesDir, generatedResourcesDir)) {
+            return;
+        }
 
         // Delete output directories, since JMH doesn't clean up between runs automatically. If we don't delete the
         //  former outputs, we might end up with stale classes.
-        cleanup(getGeneratedSourcesDir().get().getAsFile());
-        cleanup(getGeneratedResourcesDir().get().getAsFile());
-
-        for (File classesDir : getClassesDirsToProcess()) {
-            getExecOperations().javaexec(spec -> {
-                spec.getMainClass().set("org.openjdk.jmh.generators.bytecode.JmhBytecodeGenerator");
-                spec.classpath(getJmhClasspath(), getRuntimeClasspath(), getClassesDirsToProcess());
-                spec.args(
-                        classesDir,
-                        getGeneratedSourcesDir().get().getAsFile(),
-                        getGeneratedResourcesDir().get().getAsFile(),
-                        getGeneratorType().get()
-                );
-
-                // "Disable" stdout if Gradle's log level is not "into" or more verbose to
-                // prevent the just informational messaged from JMH's bytecode generator, like
-                // "Processing 30 classes from ..." and "Writing out Java source to ...".
-                if (!getLogger().isInfoEnabled()) {
-                    spec.setStandardOutput(new ByteArrayOutputStream());
+        cleanup(generatedSourcesDir);
+        cleanup(generatedResourcesDir);
+
+        runGenerator(new ArrayList<>(getClassesDirsToProcess().getFiles()), generatedSourcesDir, generatedResourcesDir);
+    }
+
+    /**
+     * Runs the generator on each classes directory concurrently, each directory being generated in its own
+     * temporary location, then merges the results into the given output directories.
+     */
+    private void runGenerator(List<File> classesDirs, File generatedSourcesDir, File generatedResourcesDir) {
+        boolean inProcess = getInProcess().getOrElse(false);
+        String forkReason = inProcess ? forkReason() : null;
+        if (forkReason != null) {
+            getLogger().warn("The JMH bytecode generator cannot run in-process because {}, it is executed in a forked JVM", forkReason);
+            inProcess = false;
+        }
+        WorkQueue workQueue;
+        if (inProcess) {
+            // Same as for the forked generator: JMH's informational messages are only shown with --info
+            getLogging().captureStandardOutput(LogLevel.INFO);
+            workQueue = getWorkerExecutor().classLoaderIsolation(spec -> spec.getClasspath().from(getJmhClasspath()));
+        } else {
+            workQueue = getWorkerExecutor().noIsolation();
+        }
+        List<File> outputDirs = new ArrayList<>();
+        for (File classesDir : classesDirs) {
+            if (!classesDir.isDirectory()) {
+                continue;
+            }
+            File outputDir = new File(getTemporaryDir(), "generator/" + outputDirs.size());
+            cleanup(outputDir);
+            outputDirs.add(outputDir);
+            if (inProcess) {
+                workQueue.submit(JmhBytecodeGeneratorWorkAction.class, params -> {
+                    params.getClasspath().from(getRuntimeClasspath(), getClassesDirsToProcess());
+                    configureGenerator(params, classesDir, outputDir);
+                });
+            } else {
+                workQueue.submit(JmhBytecodeGeneratorForkAction.class, params -> {
+                    params.getClasspath().from(getJmhClasspath(), getRuntimeClasspath(), getClassesDirsToProcess());
+                    configureGenerator(params, classesDir, outputDir);
+                    params.getJvmArgs().set(getJvmArgs());
+                    Provider<JavaLauncher> javaLauncher = getJavaLauncher();
+                    if (javaLauncher.isPresent()) {
+                        params.getExecutable().set(javaLauncher.get().getExecutablePath());
+                    }
+                    // "Disable" stdout if Gradle's log level is not "into" or more verbose to
+                    // prevent the just informational messaged from JMH's bytecode generator, like
+                    // "Processing 30 classes from ..." and "Writing out Java source to ...".
+                    params.getQuiet().set(!getLogger().isInfoEnabled());
+                });
+            }
+        }
+        workQueue.await();
+
+        // Sources of duplicate classes are taken from the last directory, like when all directories
+        // were generated in the same location. The resources are merged, then sorted.
+        List<String> benchmarks = new ArrayList<>();
+        List<String> compilerHints = new ArrayList<>();
+        for (File outputDir : outputDirs) {
+            copyTree(new File(outputDir, "sources"), generatedSourcesDir);
+            File resourcesDir = new File(outputDir, "resources");
+            benchmarks.addAll(BenchmarkListFile.readLines(new File(resourcesDir, BenchmarkListFile.BENCHMARK_LIST)));
+            compilerHints.addAll(BenchmarkListFile.readLines(new File(resourcesDir, BenchmarkListFile.COMPILER_HINTS)));
+            copyTree(resourcesDir, generatedResourcesDir);
+        }
+        BenchmarkListFile.writeLines(new File(generatedResourcesDir, BenchmarkListFile.BENCHMARK_LIST), benchmarks);
+        BenchmarkListFile.writeLines(new File(generatedResourcesDir, BenchmarkListFile.COMPILER_HINTS), compilerHints);
+    }
+
+    /**
+     * Returns why the generator must be forked even though it should run in-process, or null if it can run
+     * in-process.
+     */
+    String forkReason() {
+        if (!getJvmArgs().getOrElse(Collections.emptyList()).isEmpty()) {
+            return "JVM arguments are set on task " + getPath();
+        }
+        Provider<JavaLauncher> javaLauncher = getJavaLauncher();
+        if (javaLauncher.isPresent()) {
+            int toolchainVersion = javaLauncher.get().getMetadata().getLanguageVersion().asInt();
+            int daemonVersion = Integer.parseInt(JavaVersion.current().getMajorVersion());
+            if (toolchainVersion > daemonVersion) {
+                return "the Java toolchain of task " + getPath() + " (Java " + toolchainVersion
+                        + ") is more recent than the JVM of the Gradle daemon (Java " + daemonVersion + ")";
+            }
+        }
+        return null;
+    }
+
+    private void configureGenerator(JmhBytecodeGeneratorWorkAction.Params params, File classesDir, File outputDir) {
+        params.getClassesDir().set(classesDir);
+        params.getGeneratedSourcesDir().set(new File(outputDir, "sources"));
+        params.getGeneratedResourcesDir().set(new File(outputDir, "resources"));
+        params.getGeneratorType().set(getGeneratorType());
+    }
+
+    /**
+     * Regenerates the benchmarks of the top-level classes which changed since the last execution, and merges
+     * them with the outputs of the previous execution. Classes which don't use any JMH annotation are ignored,
+     * since they don't contribute to the generated code, unless they inherit benchmarks from a superclass.
+     *
+     * @return false if the changes cannot be processed incrementally, in which case everything must be regenerated
+     */
+    private boolean generateIncrementally(InputChanges inputChanges, File generatedSourcesDir, File generatedResourcesDir) {
+        if (getGeneratorType().get().equalsIgnoreCase("asm")) {
+            // the ASM generator only sees the classes it processes, so inherited benchmarks would be lost
+            return false;
+        }
+        File benchmarkList = new File(generatedResourcesDir, BenchmarkListFile.BENCHMARK_LIST);
+        if (!benchmarkList.isFile()) {
+            return false;
+        }
+        List<File> classesDirs = new ArrayList<>(getClassesDirsToProcess().getFiles());
+        Set<String> changedClasses = new TreeSet<>();
+        for (FileChange change : inputChanges.getFileChanges(getClassesDirsToProcess())) {
+            if (change.getFileType() == FileType.DIRECTORY) {
+                continue;
+            }
+            String className = topLevelClassName(classesDirs, change.getFile());
+            if (className != null) {
+                changedClasses.add(className);
+            }
+        }
+
+        List<String> previousEntries = BenchmarkListFile.readLines(benchmarkList);
+        List<String> previousUserClasses = new ArrayList<>();
+        try {
+            for (String line : previousEntries) {
+                previousUserClasses.add(BenchmarkListFile.benchmarkClass(line));
+            }
+        } catch (GradleException e) {
+            getLogger().info("Unable to read the previous benchmark list, regenerating all benchmarks", e);
+            return false;
+        }
+        ClassHierarchy classes = new ClassHierarchy(classesDirs);
+        Set<String> superClasses = new TreeSet<>();
+        for (String userClass : previousUserClasses) {
+            for (String superClass : classes.superClassesOf(userClass)) {
+                superClasses.add(topLevelClassName(superClass));
+            }
+        }
+        Set<String> affected = new TreeSet<>();
+        Set<String> toGenerate = new TreeSet<>();
+        for (String className : changedClasses) {
+            boolean hadBenchmarks = previousUserClasses.stream()
+                    .anyMatch(userClass -> BenchmarkListFile.belongsTo(userClass, className));
+            boolean exists = !classFilesOf(classesDirs, className).isEmpty();
+            boolean usesJmh = usesJmhAnnotations(classesDirs, className);
+            boolean hadGeneratedSources = !generatedSourcesOf(generatedSourcesDir, classesDirs, className).isEmpty();
+            if (!hadBenchmarks && hadGeneratedSources) {
+                // a state class, used by benchmarks of other classes
+                return false;
+            }
+            if (superClasses.contains(className)) {
+                // the benchmarks of its subclasses depend on it
+                return false;
+            }
+            if (exists && !usesJmh && (hadBenchmarks || extendsJmhClass(classes, classesDirs, className))) {
+                // benchmarks inherited from an annotated superclass
+                return false;
+            }
+            if (hadBenchmarks || usesJmh) {
+                affected.add(className);
+            }
+            if (usesJmh) {
+                toGenerate.add(className);
+            }
+        }
+        if (affected.isEmpty()) {
+            getLogger().info("No benchmark class changed, nothing to regenerate");
+            return true;
+        }
+
+        File stagingDir = new File(getTemporaryDir(), "incremental");
+        cleanup(stagingDir);
+        File stagedClasses = new File(stagingDir, "classes");
+        File stagedSources = new File(stagingDir, "sources");
+        File stagedResources = new File(stagingDir, "resources");
+        if (!toGenerate.isEmpty()) {
+            for (String className : toGenerate) {
+                stageClassFiles(classesDirs, className, stagedClasses);
+            }
+            runGenerator(Collections.singletonList(stagedClasses), stagedSources, stagedResources);
+        }
+
+        List<String> stagedEntries = BenchmarkListFile.readLines(new File(stagedResources, BenchmarkListFile.BENCHMARK_LIST));
+        List<String> stagedUserClasses = new ArrayList<>();
+        for (String line : stagedEntries) {
+            stagedUserClasses.add(BenchmarkListFile.benchmarkClass(line));
+        }
+        for (String className : toGenerate) {
+            if (stagedUserClasses.stream().noneMatch(userClass -> BenchmarkListFile.belongsTo(userClass, className))) {
+                // an abstract benchmark or a state class: the benchmarks depending on it are unknown
+                return false;
+            }
+        }
+
+        getLogger().info("Regenerating benchmarks for {}", affected);
+        for (String className : affected) {
+            for (File generated : generatedSourcesOf(generatedSourcesDir, classesDirs, className)) {
+                generated.delete();
+            }
+        }
+        copyTree(stagedSources, generatedSourcesDir);
+
+        List<String> benchmarks = new ArrayList<>(stagedEntries);
+        for (int i = 0; i < previousEntries.size(); i++) {
+            String line = previousEntries.get(i);
+            String userClass = previousUserClasses.get(i);
+            if (affected.stream().noneMatch(className -> BenchmarkListFile.belongsTo(userClass, className))) {
+                benchmarks.add(line);
+            }
+        }
+        BenchmarkListFile.writeLines(benchmarkList, benchmarks);
+
+        File compilerHintsFile = new File(generatedResourcesDir, BenchmarkListFile.COMPILER_HINTS);
+        List<String> compilerHints = new ArrayList<>(BenchmarkListFile.readLines(new File(stagedResources, BenchmarkListFile.COMPILER_HINTS)));
+        for (String hint : BenchmarkListFile.readLines(compilerHintsFile)) {
+            String hintClass = BenchmarkListFile.compilerHintClass(hint);
+            if (affected.stream().noneMatch(className -> BenchmarkListFile.belongsTo(hintClass, className))) {
+                compilerHints.add(hint);
+            }
+        }
+        BenchmarkListFile.writeLines(compilerHintsFile, compilerHints);
+        return true;
+    }
+
+    /**
+     * Returns the fully qualified name of the top-level class a class file belongs to, or null
+     * if the file isn't a class file.
+     */
+    private static String topLevelClassName(List<File> classesDirs, File classFile) {
+        if (!classFile.getName().endsWith(".class")) {
+            return null;
+        }
+        for (File classesDir : classesDirs) {
+            Path root = classesDir.toPath();
+            Path path = classFile.toPath();
+            if (path.startsWith(root)) {
+                String relativePath = root.relativize(path).toString().replace(File.separatorChar, '/');
+                return topLevelClassName(relativePath.substring(0, relativePath.length() - ".class".length()));
+            }
+        }
+        return null;
+    }
+
+    private static String topLevelClassName(String internalName) {
+        int nested = internalName.indexOf('$', internalName.lastIndexOf('/') + 1);
+        return (nested > 0 ? internalName.substring(0, nested) : internalName).replace('/', '.');
+    }
+
+    private static boolean extendsJmhClass(ClassHierarchy classes, List<File> classesDirs, String className) {
+        return classes.superClassesOf(className).stream()
+                .anyMatch(superClass -> usesJmhAnnotations(classesDirs, topLevelClassName(superClass)));
+    }
+
+    /**
+     * Returns the current class files of a top-level class, including its nested classes.
+     */
+    private static List<File> classFilesOf(List<File> classesDirs, String className) {
+        List<File> classFiles = new ArrayList<>();
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        String packagePath = packageOf(className).replace('.', '/');
+        for (File classesDir : classesDirs) {
+            File[] files = new File(classesDir, packagePath).listFiles((dir, name) ->
+                    name.equals(simpleName + ".class") || (name.startsWith(simpleName + "$") && name.endsWith(".class")));
+            if (files != null) {
+                Collections.addAll(classFiles, files);
+            }
+        }
+        return classFiles;
+    }
+
+    private static boolean usesJmhAnnotations(List<File> classesDirs, String className) {
+        for (File classFile : classFilesOf(classesDirs, className)) {
+            try {
+                if (contains(Files.readAllBytes(classFile.toPath()), JMH_ANNOTATIONS)) {
+                    return true;
                 }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(byte[] bytes, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static void stageClassFiles(List<File> classesDirs, String className, File stagedClasses) {
+        File packageDir = new File(stagedClasses, packageOf(className).replace('.', '/'));
+        try {
+            Files.createDirectories(packageDir.toPath());
+            for (File classFile : classFilesOf(classesDirs, className)) {
+                Files.copy(classFile.toPath(), new File(packageDir, classFile.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-                spec.jvmArgs(getJvmArgs().get());
-                Provider<JavaLauncher> javaLauncher = getJavaLauncher();
-                if (javaLauncher.isPresent()) {
-                    spec.executable(javaLauncher.get().getExecutablePath().getAsFile());
+    /**
+     * Returns the generated sources of a top-level class. JMH generates them in the {@code jmh_generated}
+     * sub-package, with names prefixed by the simple name of the class: when several classes of the same
+     * package share a prefix (e.g. {@code Foo} and {@code Foo_Bar}), a file belongs to the longest one.
+     */
+    private static List<File> generatedSourcesOf(File generatedSourcesDir, List<File> classesDirs, String className) {
+        String packageName = packageOf(className);
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        File generatedPackageDir = new File(generatedSourcesDir,
+                (packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/") + GENERATED_PACKAGE);
+        File[] candidates = generatedPackageDir.listFiles((dir, name) -> name.startsWith(simpleName + "_"));
+        if (candidates == null || candidates.length == 0) {
+            return Collections.emptyList();
+        }
+        Set<String> longerNames = new LinkedHashSet<>();
+        for (File classesDir : classesDirs) {
+            File[] siblings = new File(classesDir, packageName.replace('.', '/')).listFiles((dir, name) ->
+                    name.startsWith(simpleName + "_") && name.endsWith(".class") && !name.contains("$"));
+            if (siblings != null) {
+                for (File sibling : siblings) {
+                    longerNames.add(sibling.getName().substring(0, sibling.getName().length() - ".class".length()));
+                }
+            }
+        }
+        List<File> generated = new ArrayList<>();
+        for (File candidate : candidates) {
+            if (longerNames.stream().noneMatch(name -> candidate.getName().startsWith(name + "_"))) {
+                generated.add(candidate);
+            }
+        }
+        return generated;
+    }
+
+    private static String packageOf(String className) {
+        int lastDot = className.lastIndexOf('.');
+        return lastDot < 0 ? "" : className.substring(0, lastDot);
+    }
+
+    /**
+     * Copies a directory. Line endings of generated Java sources are normalized, so that the sources, and the
+     * cache keys of the tasks consuming them, are the same whatever the operating system.
+     */
+    private static void copyTree(File from, File into) {
+        if (!from.isDirectory()) {
+            return;
+        }
+        Path source = from.toPath();
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path target = into.toPath().resolve(source.relativize(path));
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(target);
+                } else if (path.toString().endsWith(".java")) {
+                    String text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+                    Files.write(target, text.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+                } else {
+                    Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
                 }
-            });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the JMH bytecode generator for a single classes directory inside the worker classloader.
+ * The worker classloader only contains JMH itself, so that it can be cached and reused between
+ * builds, while the classes being processed are loaded from a fresh classloader on every call.
+ */
+public abstract class JmhBytecodeGeneratorWorkAction implements WorkAction<JmhBytecodeGeneratorWorkAction.Params> {
+
+    @Override
+    public void execute() {
+        Params params = getParameters();
+        File classesDir = params.getClassesDir().get().getAsFile();
+        String[] args = new String[]{
+                classesDir.getAbsolutePath(),
+                params.getGeneratedSourcesDir().get().getAsFile().getAbsolutePath(),
+                params.getGeneratedResourcesDir().get().getAsFile().getAbsolutePath(),
+                params.getGeneratorType().get()
+        };
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        // JMH resolves the classes to process through the context classloader
+        try (URLClassLoader loader = new URLClassLoader(toUrls(params.getClasspath()), getClass().getClassLoader())) {
+            thread.setContextClassLoader(loader);
+            Class<?> generator = Class.forName(JmhBytecodeGeneratorTask.GENERATOR_MAIN_CLASS, true, loader);
+            generator.getMethod("main", String[].class).invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            throw new GradleException("JMH bytecode generation failed for " + classesDir, e.getCause());
+        } catch (ReflectiveOperationException | IOException e) {
+            throw new GradleException("Unable to run the JMH bytecode generator for " + classesDir, e);
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    private static URL[] toUrls(Iterable<File> files) throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (File file : files) {
+            urls.add(file.toURI().toURL());
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    public interface Params extends WorkParameters {
+        ConfigurableFileCollection getClasspath();
+
+        DirectoryProperty getClassesDir();
+
+        DirectoryProperty getGeneratedSourcesDir();
+
+        DirectoryProperty getGeneratedResourcesDir();
+
+        Property<String> getGeneratorType();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonSlurper;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.DisableCachingByDefault;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compares JMH results with the results of a baseline, and fails when a benchmark regressed by more than
+ * a threshold. Both results must be in JSON format.
+ */
+@DisableCachingByDefault(because = "Comparing results is faster than fetching them from the cache")
+public abstract class JmhCompareTask extends DefaultTask {
+
+    /**
+     * The results to check, which default to the results of the {@code jmh} task. This task then depends on
+     * the {@code jmh} task, so that the benchmarks are executed first unless their results are up-to-date.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getResultsFile();
+
+    /**
+     * The results of the baseline, for example from a run on the main branch. Defaults to
+     * {@code build/jmh-baseline/results.json}.
+     */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    public abstract RegularFileProperty getBaselineFile();
+
+    /**
+     * The relative change, e.g. {@code 0.05} for 5%, beyond which a benchmark which got worse is considered
+     * as a regression. Changes which are not significant given the confidence intervals of the scores are
+     * never considered as regressions.
+     */
+    @Input
+    public abstract Property<Double> getThreshold();
+
+    /**
+     * Whether the task fails when a benchmark regressed. Defaults to true.
+     */
+    @Input
+    public abstract Property<Boolean> getFailOnRegression();
+
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    @TaskAction
+    public void compare() {
+        double threshold = getThreshold().get();
+        List<BenchmarkComparison> comparisons = BenchmarkComparison.compare(
+                readResults(getBaselineFile().get().getAsFile()),
+                readResults(getResultsFile().get().getAsFile()));
+        List<BenchmarkComparison> regressions = comparisons.stream()
+                .filter(c -> c.isRegression(threshold))
+                .collect(Collectors.toList());
+        StringBuilder report = new StringBuilder();
+        for (BenchmarkComparison comparison : comparisons) {
+            String status = comparison.isRegression(threshold) ? "REGRESSION"
+                    : comparison.isImprovement(threshold) ? "improvement" : "";
+            report.append(comparison.format()).append("  ").append(status).append(System.lineSeparator());
+        }
+        File reportFile = getReportFile().get().getAsFile();
+        try {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+            Files.write(reportFile.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        getLogger().lifecycle(report.toString().trim());
+        if (!regressions.isEmpty()) {
+            String message = regressions.size() + " benchmark(s) regressed by more than " + (threshold * 100) + "%: "
+                    + regressions.stream().map(BenchmarkComparison::getName).collect(Collectors.joining(", "))
+                    + ". See the report at " + reportFile;
+            if (getFailOnRegression().get()) {
+                throw new GradleException(message);
+            }
+            getLogger().warn(message);
+        }
+    }
+
+    private static List<?> readResults(File file) {
+        Object json;
+        try {
+            json = new JsonSlurper().parse(file);
+        } catch (RuntimeException e) {
+            throw new GradleException("Unable to read JMH results from " + file + ", results must be in JSON format", e);
+        }
+        return json instanceof List ? (List<?>) json : Collections.emptyList();
+    }
+}
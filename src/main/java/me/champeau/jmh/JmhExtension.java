@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.Action;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Nested;
+
+/**
+ * The {@code jmh} extension. Besides the parameters of the JMH tasks, it holds the settings of the project
+ * which are not parameters of a benchmark run, so that they are not inputs of the JMH tasks.
+ */
+public interface JmhExtension extends JmhParameters {
+    /**
+     * Runs the JMH bytecode generator in-process, through the Worker API, instead of forking a JVM per classes directory.
+     * The generator is still forked when its task has JVM arguments, or a Java toolchain more recent than the Gradle JVM.
+     */
+    Property<Boolean> getBytecodeGeneratorInProcess();
+
+    /**
+     * Whether benchmarks are executed from the jar built by the {@code jmhJar} task. When false, they are executed
+     * directly from the compiled classes and the runtime classpath, and the jar is not built.
+     */
+    Property<Boolean> getUseJmhJar();
+
+    /**
+     * Builds a thin {@code jmhJar}, which only contains the benchmarks and project classes. Dependencies are linked
+     * into a {@code lib} directory next to the jar and referenced through the {@code Class-Path} manifest attribute.
+     */
+    Property<Boolean> getThinJar();
+
+    /**
+     * The number of CPUs available to the JMH tasks of the build. When set, JMH tasks are executed concurrently
+     * as long as the CPUs they require fit in the budget, instead of one at a time.
+     */
+    Property<Integer> getCpuBudget();
+
+    /**
+     * The memory available to the JMH tasks of the build, using the JVM notation (for example {@code 32g}).
+     * When set, JMH tasks are executed concurrently as long as the memory they require fits in the budget.
+     */
+    Property<String> getMemoryBudget();
+
+    /**
+     * The Java versions and JVM flag sets to execute the benchmarks with, each combination being executed by its
+     * own task.
+     */
+    @Nested
+    JmhMatrix getMatrix();
+    default void matrix(Action<? super JmhMatrix> action) {
+        action.execute(getMatrix());
+    }
+}
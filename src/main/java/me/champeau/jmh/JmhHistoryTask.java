@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+import org.gradle.work.DisableCachingByDefault;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Displays the history of benchmark results recorded in the results store, e.g.
+ * <pre>
+ *     ./gradlew jmhHistory --benchmark=MyBenchmark --last=10
+ * </pre>
+ */
+@DisableCachingByDefault(because = "Displays results without producing any output")
+public abstract class JmhHistoryTask extends DefaultTask {
+
+    @Internal
+    @Optional
+    public abstract DirectoryProperty getResultsStore();
+
+    /**
+     * A regular expression searched in the names of the benchmarks to display.
+     */
+    @Input
+    @Optional
+    @Option(option = "benchmark", description = "A regular expression matching the benchmarks to display.")
+    public abstract Property<String> getBenchmark();
+
+    /**
+     * The maximum number of results to display for each benchmark.
+     */
+    @Input
+    @Optional
+    @Option(option = "last", description = "The maximum number of results to display for each benchmark.")
+    public abstract Property<Integer> getLast();
+
+    @TaskAction
+    public void displayHistory() {
+        if (!getResultsStore().isPresent()) {
+            throw new InvalidUserDataException("No results store is configured: set the resultsStore directory of the jmh extension to record the history of the results");
+        }
+        Pattern benchmark = Pattern.compile(getBenchmark().getOrElse(""));
+        ResultsStore store = new ResultsStore(getResultsStore().get().getAsFile());
+        List<Map<String, Object>> results = store.query(name -> benchmark.matcher(name).find());
+        if (results.isEmpty()) {
+            getLogger().lifecycle("No results found in {}", getResultsStore().get().getAsFile());
+            return;
+        }
+        int last = getLast().getOrElse(Integer.MAX_VALUE);
+        Map<String, List<Map<String, Object>>> series = ResultsStore.series(results);
+        series.forEach((name, history) -> {
+            getLogger().lifecycle(name);
+            for (Map<String, Object> result : history.subList(Math.max(0, history.size() - last), history.size())) {
+                Object revision = result.get("revision");
+                getLogger().lifecycle(String.format("  %-24s %-10s %14s \u00b1 %-12s %s",
+                        Instant.ofEpochMilli(((Number) result.get("timestamp")).longValue()),
+                        revision == null ? "" : revision.toString().substring(0, Math.min(10, revision.toString().length())),
+                        result.get("score"),
+                        result.get("scoreError"),
+                        result.get("scoreUnit")));
+            }
+        });
+    }
+}
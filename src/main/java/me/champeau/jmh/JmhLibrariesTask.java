@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.DisableCachingByDefault;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Copies the runtime dependencies of the benchmarks next to a thin JMH jar, which references them
+ * through the {@code Class-Path} attribute of its manifest. Files are hard-linked when the file system
+ * supports it, and only copied otherwise.
+ */
+@DisableCachingByDefault(because = "Linking or copying files is faster than fetching them from the cache")
+public abstract class JmhLibrariesTask extends DefaultTask {
+    static final String LIBRARIES_DIRECTORY = "lib";
+
+    @Classpath
+    public abstract ConfigurableFileCollection getLibraries();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getDestinationDirectory();
+
+    @TaskAction
+    public void syncLibraries() {
+        Map<File, String> libraries = libraryNames(getLibraries());
+        File destination = getDestinationDirectory().get().getAsFile();
+        Set<String> expected = new HashSet<>(libraries.values());
+        File[] existing = destination.listFiles();
+        if (existing != null) {
+            for (File file : existing) {
+                if (!expected.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+        try {
+            Files.createDirectories(destination.toPath());
+            for (Map.Entry<File, String> library : libraries.entrySet()) {
+                Path source = library.getKey().toPath();
+                Path target = new File(destination, library.getValue()).toPath();
+                if (isUpToDate(source, target)) {
+                    continue;
+                }
+                Files.deleteIfExists(target);
+                try {
+                    Files.createLink(target, source);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isUpToDate(Path source, Path target) throws IOException {
+        if (!Files.exists(target)) {
+            return false;
+        }
+        return Files.isSameFile(source, target)
+                || (Files.size(source) == Files.size(target)
+                && Files.getLastModifiedTime(source).equals(Files.getLastModifiedTime(target)));
+    }
+
+    /**
+     * Returns the jars of the given classpath, with the name they get in the libraries directory.
+     * Jars which share the same file name are disambiguated by a numeric suffix.
+     */
+    static Map<File, String> libraryNames(Iterable<File> classpath) {
+        Map<File, String> names = new LinkedHashMap<>();
+        Set<String> used = new HashSet<>();
+        for (File file : classpath) {
+            if (!file.isFile() || !file.getName().toLowerCase().endsWith(".jar")) {
+                continue;
+            }
+            String name = file.getName();
+            String baseName = name.substring(0, name.length() - ".jar".length());
+            for (int i = 2; !used.add(name); i++) {
+                name = baseName + "-" + i + ".jar";
+            }
+            names.put(file, name);
+        }
+        return names;
+    }
+
+    /**
+     * Computes the {@code Class-Path} manifest attribute referencing the libraries of a thin jar.
+     */
+    static String manifestClassPath(Iterable<File> classpath) {
+        return libraryNames(classpath).values().stream()
+                .map(name -> LIBRARIES_DIRECTORY + "/" + name)
+                .collect(Collectors.joining(" "));
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+
+import java.util.List;
+
+/**
+ * The Java versions and JVM flag sets the benchmarks are executed with, in addition to the {@code jmh} task, e.g.
+ * <pre>
+ *     jmh {
+ *         matrix {
+ *             javaVersions = [17, 21]
+ *             jvmFlagSets = [g1: ['-XX:+UseG1GC'], zgc: ['-XX:+UseZGC']]
+ *         }
+ *     }
+ * </pre>
+ * A JMH task is registered for each combination of a Java version and a flag set, such as {@code jmhJava17Zgc},
+ * and the {@code jmhMatrix} task compares their results.
+ */
+public interface JmhMatrix {
+    /**
+     * The Java language versions of the toolchains executing the benchmarks.
+     */
+    ListProperty<Integer> getJavaVersions();
+
+    /**
+     * Named sets of JVM flags appended to the JVM arguments of the benchmarks.
+     */
+    MapProperty<String, List<String>> getJvmFlagSets();
+}
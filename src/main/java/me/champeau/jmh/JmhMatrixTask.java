@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.DisableCachingByDefault;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Merges the results of the tasks of the benchmark matrix, tagging each result with its variant, and writes a
+ * table comparing the scores of each benchmark across variants. Results must be in JSON format.
+ */
+@DisableCachingByDefault(because = "Merging results is faster than fetching them from the cache")
+public abstract class JmhMatrixTask extends DefaultTask {
+
+    @Inject
+    protected abstract ObjectFactory getObjects();
+
+    /**
+     * The results file of each variant, by variant name. The first variant is the baseline of the comparison.
+     */
+    @Internal
+    public abstract MapProperty<String, RegularFile> getResultsFiles();
+
+    @Input
+    public Provider<Set<String>> getVariants() {
+        return getResultsFiles().keySet();
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.NONE)
+    protected FileCollection getResults() {
+        return getObjects().fileCollection().from(getResultsFiles().map(Map::values));
+    }
+
+    @OutputFile
+    public abstract RegularFileProperty getMergedResultsFile();
+
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    @TaskAction
+    public void compareVariants() {
+        if (getResultsFiles().get().isEmpty()) {
+            throw new GradleException("No variant is declared: set the Java versions or the JVM flag sets of the matrix of the jmh extension");
+        }
+        Map<String, List<?>> results = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        List<Object> merged = new ArrayList<>();
+        getResultsFiles().get().forEach((variant, resultsFile) -> {
+            File file = resultsFile.getAsFile();
+            if (!file.isFile()) {
+                missing.add(variant);
+                results.put(variant, Collections.emptyList());
+                return;
+            }
+            List<?> variantResults = readResults(file);
+            results.put(variant, variantResults);
+            for (Object item : variantResults) {
+                if (item instanceof Map) {
+                    Map<Object, Object> tagged = new LinkedHashMap<>((Map<?, ?>) item);
+                    tagged.put("variant", variant);
+                    merged.add(tagged);
+                }
+            }
+        });
+        if (missing.size() == results.size()) {
+            throw new GradleException("None of the variants of the matrix has results");
+        }
+        String report = report(results);
+        if (!missing.isEmpty()) {
+            getLogger().warn("No results found for the variants {}", missing);
+            report += "\nVariants without results: " + String.join(", ", missing) + "\n";
+        }
+        write(getMergedResultsFile().get().getAsFile(), JsonOutput.prettyPrint(JsonOutput.toJson(merged)));
+        write(getReportFile().get().getAsFile(), report);
+        getLogger().lifecycle(report.trim());
+    }
+
+    /**
+     * Formats a table of the scores of each benchmark per variant, with their change relative to the first variant.
+     */
+    static String report(Map<String, List<?>> resultsByVariant) {
+        Map<String, Map<String, Map<?, ?>>> indexes = new LinkedHashMap<>();
+        TreeSet<String> names = new TreeSet<>();
+        resultsByVariant.forEach((variant, results) -> {
+            Map<String, Map<?, ?>> index = BenchmarkComparison.index(results);
+            indexes.put(variant, index);
+            names.addAll(index.keySet());
+        });
+        List<String> variants = new ArrayList<>(indexes.keySet());
+        List<List<String>> rows = new ArrayList<>();
+        List<String> header = new ArrayList<>();
+        header.add("Benchmark");
+        header.add("Unit");
+        header.addAll(variants);
+        rows.add(header);
+        for (String name : names) {
+            List<String> row = new ArrayList<>();
+            row.add(name);
+            row.add("");
+            Double baseline = null;
+            for (int i = 0; i < variants.size(); i++) {
+                Map<?, ?> result = indexes.get(variants.get(i)).get(name);
+                if (result == null) {
+                    row.add("-");
+                    continue;
+                }
+                Map<?, ?> metric = result.get("primaryMetric") instanceof Map ? (Map<?, ?>) result.get("primaryMetric") : Collections.emptyMap();
+                double score = number(metric.get("score"));
+                double error = number(metric.get("scoreError"));
+                row.set(1, String.valueOf(metric.get("scoreUnit")));
+                StringBuilder cell = new StringBuilder(String.format(Locale.ROOT, "%.3f \u00b1 %.3f", score, error));
+                if (i == 0) {
+                    baseline = score;
+                } else if (baseline != null && baseline != 0) {
+                    cell.append(String.format(Locale.ROOT, " (%+.2f%%)", (score - baseline) / baseline * 100));
+                }
+                row.add(cell.toString());
+            }
+            rows.add(row);
+        }
+        int[] widths = new int[header.size()];
+        for (List<String> row : rows) {
+            for (int i = 0; i < row.size(); i++) {
+                widths[i] = Math.max(widths[i], row.get(i).length());
+            }
+        }
+        StringBuilder table = new StringBuilder();
+        for (List<String> row : rows) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < row.size(); i++) {
+                String format = i < 2 ? "%-" + widths[i] + "s  " : "%" + widths[i] + "s  ";
+                line.append(String.format(format, row.get(i)));
+            }
+            table.append(line.toString().replaceAll("\\s+$", "")).append('\n');
+        }
+        return table.toString();
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return value == null ? Double.NaN : Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static List<?> readResults(File file) {
+        Object json;
+        try {
+            json = new JsonSlurper().parse(file);
+        } catch (RuntimeException e) {
+            throw new GradleException("Unable to read JMH results from " + file + ", results must be in JSON format", e);
+        }
+        return json instanceof List ? (List<?>) json : Collections.emptyList();
+    }
+
+    private static void write(File file, String text) {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -17,12 +17,16 @@ package me.champeau.jmh;
 
 import java.util.List;
 
+import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.file.DuplicatesStrategy;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.MapProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Nested;
 import org.gradle.api.tasks.Optional;
 
 public interface JmhParameters extends WithJavaToolchain {
@@ -179,4 +183,209 @@ public interface JmhParameters extends WithJavaToolchain {
     @Input
     @Optional
     ListProperty<String> getJmhOptions();
+
+    /**
+     * The number of JMH processes executed concurrently, each of them running a subset of the benchmarks
+     * while pinned to its own set of CPUs. Defaults to 1, which runs all benchmarks in a single JMH process.
+     */
+    @Input
+    @Optional
+    Property<Integer> getParallelRuns();
+
+    /**
+     * The directory of the results store, to which the results of every run are appended when the
+     * result format is JSON. The store can be queried with the {@code jmhHistory} task. Results are
+     * not stored if this directory is not set.
+     */
+    @Internal
+    @Optional
+    DirectoryProperty getResultsStore();
+
+    /**
+     * Runs JMH in a launcher JVM which is kept alive between builds, instead of starting a new JVM for every run.
+     * This is meant for quick iterations on benchmarks: combined with {@code fork = 0}, benchmarks are executed in
+     * the warm launcher itself.
+     */
+    @Internal
+    Property<Boolean> getWarmLauncher();
+
+    /**
+     * Only executes the benchmarks whose code changed since the previous run, reusing the previous results of the
+     * other benchmarks. A benchmark is executed again when its class, or a class of the project it depends on,
+     * changed, and all benchmarks are executed again when the JMH options, the libraries or the JVM changed.
+     * Requires the JSON result format.
+     */
+    @Internal
+    Property<Boolean> getIncrementalRuns();
+
+    /**
+     * Adapts the number of iterations of each benchmark to the stability of its scores. A calibration run
+     * first finds out when the scores of each benchmark stop varying, then benchmarks are executed with the
+     * warmup and measurement iterations they need. {@link #getWarmupIterations()} and {@link #getIterations()}
+     * are the upper bounds of the iterations.
+     */
+    @Input
+    @Optional
+    Property<Boolean> getAdaptiveIterations();
+
+    /**
+     * The minimum number of warmup iterations in adaptive mode.
+     */
+    @Input
+    @Optional
+    Property<Integer> getMinWarmupIterations();
+
+    /**
+     * The minimum number of measurement iterations in adaptive mode.
+     */
+    @Input
+    @Optional
+    Property<Integer> getMinIterations();
+
+    /**
+     * The coefficient of variation of the scores under which warmup stops, in adaptive mode.
+     */
+    @Input
+    @Optional
+    Property<Double> getAdaptiveWarmupCv();
+
+    /**
+     * The half-width of the 99.9% confidence interval of the score, relative to the score, under which
+     * measurement stops, in adaptive mode.
+     */
+    @Input
+    @Optional
+    Property<Double> getAdaptivePrecision();
+
+    /**
+     * Rules overriding the forks, iterations, iteration times, threads or JVM arguments of the benchmarks
+     * matching a pattern. Benchmarks sharing the same rule are executed in their own JMH invocation.
+     */
+    @Nested
+    NamedDomainObjectContainer<BenchmarkOverride> getBenchmarkOverrides();
+
+    /**
+     * The file to which the score of every measurement iteration is appended, in JSON lines format, as soon as
+     * JMH prints it. Unlike the results file, which is only written at the end of the run, it keeps the
+     * results of the completed iterations when a run doesn't complete.
+     */
+    RegularFileProperty getPartialResultsFile();
+
+    /**
+     * Checkpoints the results of the benchmarks as they complete, so that running the task again after an
+     * interruption only executes the benchmarks which didn't complete. The benchmarks of each class are executed
+     * in their own JMH invocation, which costs the startup of a JMH process per class, and the benchmarks of the
+     * class which was interrupted are all executed again.
+     */
+    @Internal
+    Property<Boolean> getResumable();
+
+    /**
+     * Maximum normalized allocation rates, in bytes per operation, of the benchmarks matching regular expressions.
+     * When set, the {@code gc} profiler is enabled, and the build fails when a benchmark allocates more than its
+     * budget. Requires the JSON result format.
+     */
+    @Input
+    MapProperty<String, Integer> getAllocationBudgets();
+
+    /**
+     * The async-profiler native library, or the directory of an async-profiler distribution. When set, benchmarks
+     * are profiled with async-profiler, and a profile of each benchmark is written in its own directory under
+     * {@link #getAsyncProfilerResultsDirectory()}.
+     */
+    @Internal
+    @Optional
+    RegularFileProperty getAsyncProfilerLibrary();
+
+    /**
+     * The event sampled by async-profiler: {@code cpu}, {@code alloc}, {@code lock} or {@code wall}.
+     */
+    @Input
+    @Optional
+    Property<String> getAsyncProfilerEvent();
+
+    /**
+     * The sampling interval of async-profiler, in nanoseconds for time based events and in bytes for {@code alloc}.
+     */
+    @Input
+    @Optional
+    Property<Integer> getAsyncProfilerInterval();
+
+    /**
+     * The output formats of async-profiler, separated by commas: {@code flamegraph}, {@code collapsed},
+     * {@code text}, {@code tree} or {@code jfr}.
+     */
+    @Input
+    @Optional
+    Property<String> getAsyncProfilerOutput();
+
+    @Internal
+    @Optional
+    DirectoryProperty getAsyncProfilerResultsDirectory();
+
+    /**
+     * Appends {@code -XX:+PrintCompilation -XX:+PrintInlining} to the JVM arguments of the benchmarks, and reports
+     * the methods which failed to inline, were deoptimized or were only compiled on stack replacement, along with
+     * the compilation log of each benchmark, in {@link #getJitDiagnosticsDirectory()}.
+     */
+    @Input
+    Property<Boolean> getJitDiagnostics();
+
+    @Internal
+    @Optional
+    DirectoryProperty getJitDiagnosticsDirectory();
+
+    /**
+     * Records every benchmark fork with Flight Recorder, through the {@code jfr} profiler of JMH, and summarizes
+     * the GC pauses, allocations by class, lock contention and top CPU frames of each benchmark next to its
+     * recording, in {@link #getJfrResultsDirectory()}.
+     */
+    @Input
+    Property<Boolean> getJfr();
+
+    @Internal
+    @Optional
+    DirectoryProperty getJfrResultsDirectory();
+
+    /**
+     * Samples the configurations of the {@link #getBenchmarkParameters()} instead of executing their Cartesian
+     * product: {@code pairwise} executes every pair of values of two parameters at least once, and
+     * {@code latinHypercube} spreads {@link #getSweepSamples()} configurations over the values of each parameter.
+     * Requires the JSON result format.
+     */
+    @Input
+    @Optional
+    Property<String> getParameterSweep();
+
+    /**
+     * The number of configurations of a Latin hypercube sweep, which defaults to the largest number of values
+     * of a parameter.
+     */
+    @Input
+    @Optional
+    Property<Integer> getSweepSamples();
+
+    /**
+     * The number of refinement rounds of a sweep, each executing the neighbours of the configuration in which
+     * each benchmark performed the worst. Neighbours differ by the previous or next value of one parameter.
+     */
+    @Input
+    @Optional
+    Property<Integer> getSweepRefinements();
+
+    /**
+     * Executes the benchmarks once for each of the {@link #getScalabilityThreads()}, and reports the speedup,
+     * parallel efficiency and Universal Scalability Law coefficients of each benchmark. Requires the JSON result
+     * format.
+     */
+    @Input
+    Property<Boolean> getScalability();
+
+    /**
+     * The thread counts of the scalability mode, which default to the powers of two up to the number of
+     * available processors, and this number.
+     */
+    @Input
+    @Optional
+    ListProperty<Integer> getScalabilityThreads();
 }
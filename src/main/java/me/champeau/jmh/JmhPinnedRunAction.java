@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.process.ExecOperations;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import javax.inject.Inject;
+
+/**
+ * Executes a single JMH process, pinned to a set of CPUs, when benchmarks are executed concurrently.
+ */
+public abstract class JmhPinnedRunAction implements WorkAction<JmhPinnedRunAction.Params> {
+
+    @Inject
+    public abstract ExecOperations getExecOperations();
+
+    @Override
+    public void execute() {
+        Params params = getParameters();
+        getExecOperations().exec(spec -> {
+            spec.commandLine(params.getCommandLine().get());
+            spec.environment(params.getEnvironment().get());
+        });
+    }
+
+    public interface Params extends WorkParameters {
+        ListProperty<String> getCommandLine();
+
+        MapProperty<String, String> getEnvironment();
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonSlurper;
+import org.gradle.api.InvalidUserDataException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Validates the profilers of a run, and summarizes the secondary metrics they produce.
+ */
+class JmhProfilers {
+    /**
+     * The profilers shipped with JMH.
+     */
+    static final Set<String> BUILT_IN = Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(
+            "async", "cl", "comp", "dtraceasm", "gc", "hs_cl", "hs_comp", "hs_gc", "hs_rt", "hs_thr", "jfr",
+            "mempool", "pauses", "perf", "perfasm", "perfc2c", "perfnorm", "safepoints", "stack", "xperfasm")));
+
+    /**
+     * The profilers relying on Linux {@code perf}.
+     */
+    static final Set<String> PERF = Collections.unmodifiableSet(new TreeSet<>(Arrays.asList(
+            "perf", "perfasm", "perfc2c", "perfnorm")));
+
+    // metrics shown first in summaries, when present
+    private static final List<String> PREFERRED_METRICS = Arrays.asList(
+            "cycles", "instructions", "CPI", "IPC", "L1-dcache-loads", "L1-dcache-load-misses", "LLC-loads",
+            "LLC-load-misses", "branches", "branch-misses", "gc.alloc.rate", "gc.alloc.rate.norm", "gc.count", "gc.time");
+
+    /**
+     * Returns the name of a profiler, given as passed to {@code -prof}, without its options.
+     */
+    static String nameOf(String profiler) {
+        int colon = profiler.indexOf(':');
+        return (colon < 0 ? profiler : profiler.substring(0, colon)).trim();
+    }
+
+    /**
+     * Checks that the given profilers are either JMH profilers known to the plugin, optionally followed by their
+     * options, or fully qualified names of profiler classes. Profilers added by other versions of JMH can be
+     * configured with the name of their class.
+     */
+    static void validate(List<String> profilers) {
+        for (String profiler : profilers) {
+            String name = nameOf(profiler);
+            if (!BUILT_IN.contains(name) && !isClassName(name)) {
+                throw new InvalidUserDataException("Unknown JMH profiler '" + name + "': it is neither one of " + BUILT_IN
+                        + ", nor the fully qualified name of a profiler class");
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the profiler classes which cannot be found on the given classpath. They can only be
+     * checked once the classpath of the benchmarks is known, and JMH rejects them itself if they are missing.
+     */
+    static List<String> missingProfilerClasses(List<String> profilers, Iterable<File> classpath) {
+        List<String> classNames = new ArrayList<>();
+        for (String profiler : profilers) {
+            String name = nameOf(profiler);
+            if (!BUILT_IN.contains(name) && isClassName(name)) {
+                classNames.add(name);
+            }
+        }
+        if (classNames.isEmpty()) {
+            return classNames;
+        }
+        List<URL> urls = new ArrayList<>();
+        for (File file : classpath) {
+            try {
+                urls.add(file.toURI().toURL());
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        List<String> missing = new ArrayList<>();
+        try (URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[0]), null)) {
+            for (String className : classNames) {
+                if (loader.getResource(className.replace('.', '/') + ".class") == null) {
+                    missing.add(className);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return missing;
+    }
+
+    private static boolean isClassName(String name) {
+        return name.contains(".");
+    }
+
+    /**
+     * Tells whether {@code perf} can be used by the current user: it must be installed on a Linux host, and the
+     * kernel must let unprivileged users read performance counters, unless running as root.
+     */
+    static boolean isPerfAvailable() {
+        if (!System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("linux") || !CpuSet.isExecutableOnPath("perf")) {
+            return false;
+        }
+        File paranoid = new File("/proc/sys/kernel/perf_event_paranoid");
+        if (!paranoid.isFile() || "root".equals(System.getProperty("user.name"))) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(new String(Files.readAllBytes(paranoid.toPath()), StandardCharsets.UTF_8).trim()) <= 2;
+        } catch (IOException | NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Writes a table of the secondary metrics of each benchmark, read from a JMH JSON results file.
+     */
+    static void writeSummary(File jsonResults, File summary) {
+        Object json = new JsonSlurper().parse(jsonResults);
+        if (!(json instanceof List)) {
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        List<Map<String, String>> rows = new ArrayList<>();
+        Set<String> metrics = new LinkedHashSet<>();
+        Map<String, String> units = new LinkedHashMap<>();
+        for (Object item : (List<?>) json) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> result = (Map<?, ?>) item;
+            StringBuilder name = new StringBuilder(String.valueOf(result.get("benchmark")));
+            if (result.get("params") instanceof Map && !((Map<?, ?>) result.get("params")).isEmpty()) {
+                name.append(' ').append(result.get("params"));
+            }
+            name.append(" (").append(result.get("mode")).append(')');
+            Map<String, String> row = new LinkedHashMap<>();
+            Map<?, ?> primary = asMap(result.get("primaryMetric"));
+            row.put("Score", format(primary.get("score")));
+            units.putIfAbsent("Score", String.valueOf(primary.get("scoreUnit")));
+            asMap(result.get("secondaryMetrics")).forEach((key, value) -> {
+                String metric = metricName(key);
+                Map<?, ?> secondary = asMap(value);
+                metrics.add(metric);
+                units.putIfAbsent(metric, String.valueOf(secondary.get("scoreUnit")));
+                row.put(metric, format(secondary.get("score")));
+            });
+            names.add(name.toString());
+            rows.add(row);
+        }
+        List<String> columns = new ArrayList<>();
+        columns.add("Score");
+        for (String metric : PREFERRED_METRICS) {
+            if (metrics.remove(metric)) {
+                columns.add(metric);
+            }
+        }
+        columns.addAll(new TreeSet<>(metrics));
+        write(summary, table(names, rows, columns, units));
+    }
+
+    /**
+     * Returns the name of a secondary metric, without the middle dot older JMH versions prefix it with.
+     */
+    static String metricName(Object key) {
+        return String.valueOf(key).replace("\u00b7", "");
+    }
+
+    private static String table(List<String> names, List<Map<String, String>> rows, List<String> columns, Map<String, String> units) {
+        List<List<String>> lines = new ArrayList<>();
+        List<String> header = new ArrayList<>();
+        header.add("Benchmark");
+        for (String column : columns) {
+            header.add(column + " (" + units.get(column) + ")");
+        }
+        lines.add(header);
+        for (int i = 0; i < rows.size(); i++) {
+            List<String> line = new ArrayList<>();
+            line.add(names.get(i));
+            for (String column : columns) {
+                line.add(rows.get(i).getOrDefault(column, ""));
+            }
+            lines.add(line);
+        }
+        int[] widths = new int[header.size()];
+        for (List<String> line : lines) {
+            for (int c = 0; c < line.size(); c++) {
+                widths[c] = Math.max(widths[c], line.get(c).length());
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (List<String> line : lines) {
+            StringBuilder text = new StringBuilder();
+            for (int c = 0; c < line.size(); c++) {
+                String cell = line.get(c);
+                if (c == 0) {
+                    text.append(cell);
+                    for (int p = cell.length(); p < widths[c]; p++) {
+                        text.append(' ');
+                    }
+                } else {
+                    text.append("  ");
+                    for (int p = cell.length(); p < widths[c]; p++) {
+                        text.append(' ');
+                    }
+                    text.append(cell);
+                }
+            }
+            sb.append(text.toString().replaceAll("\\s+$", "")).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static Map<?, ?> asMap(Object value) {
+        return value instanceof Map ? (Map<?, ?>) value : Collections.emptyMap();
+    }
+
+    private static String format(Object score) {
+        if (!(score instanceof Number)) {
+            return score == null ? "" : String.valueOf(score);
+        }
+        double value = ((Number) score).doubleValue();
+        return Double.isNaN(value) ? "NaN" : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static void write(File file, String text) {
+        try {
+            Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
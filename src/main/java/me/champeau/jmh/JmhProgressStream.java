@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonOutput;
+import org.gradle.api.logging.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Forwards the standard output of a JMH process, while following the progress of the run from it. The
+ * progress is logged each time a fork starts, and the score of every measurement iteration is appended
+ * to a partial results file as soon as it is printed, so that it is not lost if the run doesn't complete.
+ */
+class JmhProgressStream extends OutputStream {
+    private static final Pattern RUN_PROGRESS = Pattern.compile("# Run progress: ([\\d.,]+)% complete, ETA (\\S+)");
+    private static final Pattern FORK = Pattern.compile("# Fork: (\\d+) of (\\d+)");
+    // in sample mode, the score is followed by the confidence level and the error of the iteration, e.g. "(99.9%) 0.4"
+    private static final Pattern ITERATION = Pattern.compile("Iteration\\s+(\\d+):\\s+(\\S+)\\s+(?:\\S*\\([\\d.,]+%\\)\\s+\\S+\\s+)?(\\S+)");
+    private static final Pattern PARAMETER = Pattern.compile("(\\w+) = ([^,)]*)");
+
+    private final OutputStream delegate;
+    private final Logger logger;
+    private final Writer partialResults;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private String benchmark;
+    private String mode;
+    private Map<String, String> params = new LinkedHashMap<>();
+    private String progress;
+    private String eta;
+    private int fork;
+
+    JmhProgressStream(OutputStream delegate, Logger logger, File partialResultsFile) {
+        this.delegate = delegate;
+        this.logger = logger;
+        try {
+            this.partialResults = partialResultsFile == null
+                    ? null
+                    : new OutputStreamWriter(new FileOutputStream(partialResultsFile, true), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        delegate.write(b);
+        if (b == '\n') {
+            parse(new String(line.toByteArray(), StandardCharsets.UTF_8).trim());
+            line.reset();
+        } else {
+            line.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        delegate.write(b, off, len);
+        int start = off;
+        for (int i = off; i < off + len; i++) {
+            if (b[i] == '\n') {
+                line.write(b, start, i - start);
+                parse(new String(line.toByteArray(), StandardCharsets.UTF_8).trim());
+                line.reset();
+                start = i + 1;
+            }
+        }
+        line.write(b, start, off + len - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (line.size() > 0) {
+            parse(new String(line.toByteArray(), StandardCharsets.UTF_8).trim());
+            line.reset();
+        }
+        delegate.flush();
+        if (partialResults != null) {
+            partialResults.close();
+        }
+    }
+
+    private void parse(String text) throws IOException {
+        Matcher matcher;
+        if (text.startsWith("# Benchmark mode: ")) {
+            mode = shortMode(text.substring("# Benchmark mode: ".length()));
+        } else if (text.startsWith("# Benchmark: ")) {
+            benchmark = text.substring("# Benchmark: ".length()).trim();
+            params = new LinkedHashMap<>();
+        } else if (text.startsWith("# Parameters: ")) {
+            matcher = PARAMETER.matcher(text);
+            while (matcher.find()) {
+                params.put(matcher.group(1), matcher.group(2).trim());
+            }
+        } else if ((matcher = RUN_PROGRESS.matcher(text)).lookingAt()) {
+            progress = matcher.group(1);
+            eta = matcher.group(2);
+        } else if ((matcher = FORK.matcher(text)).lookingAt()) {
+            fork = Integer.parseInt(matcher.group(1));
+            logger.lifecycle("JMH run {}% complete, ETA {}: {}{} ({}), fork {} of {}", progress, eta, benchmark,
+                    params.isEmpty() ? "" : " " + params, mode, fork, matcher.group(2));
+        } else if ((matcher = ITERATION.matcher(text)).lookingAt() && benchmark != null) {
+            iteration(Integer.parseInt(matcher.group(1)), matcher.group(2), matcher.group(3));
+        }
+    }
+
+    private void iteration(int iteration, String score, String unit) throws IOException {
+        if (partialResults == null) {
+            return;
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("benchmark", benchmark);
+        record.put("mode", mode);
+        if (!params.isEmpty()) {
+            record.put("params", params);
+        }
+        record.put("fork", fork);
+        record.put("iteration", iteration);
+        record.put("score", parseScore(score));
+        record.put("scoreUnit", unit);
+        partialResults.write(JsonOutput.toJson(record));
+        partialResults.write('\n');
+        partialResults.flush();
+    }
+
+    private static Object parseScore(String score) {
+        try {
+            return Double.parseDouble(score.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            // very small scores are printed as approximations of their order of magnitude
+            return score;
+        }
+    }
+
+    static String shortMode(String description) {
+        String name = description.split(",")[0].trim();
+        switch (name) {
+            case "Throughput":
+                return "thrpt";
+            case "Average time":
+                return "avgt";
+            case "Sampling time":
+                return "sample";
+            case "Single shot invocation time":
+                return "ss";
+            default:
+                return name;
+        }
+    }
+}
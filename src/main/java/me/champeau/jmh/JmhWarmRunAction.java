@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs JMH inside a Gradle worker daemon, which is kept alive and reused between builds. JMH and the benchmarks
+ * are loaded from a fresh classloader on every run, so that the latest benchmarks are always executed, while
+ * the launcher JVM itself is already started and warmed up.
+ */
+public abstract class JmhWarmRunAction implements WorkAction<JmhWarmRunAction.Params> {
+    private static final String JAVA_CLASS_PATH = "java.class.path";
+    private static final String JAVA_IO_TMPDIR = "java.io.tmpdir";
+    private static final String OPTIONS_CLASS = "org.openjdk.jmh.runner.options.CommandLineOptions";
+    private static final String PARSE_ERROR_CLASS = "org.openjdk.jmh.runner.options.CommandLineOptionException";
+    // listing options, mapped to the methods of the command line options which handle them, as done by the JMH main class
+    private static final String[][] OPTIONS_ACTIONS = {
+            {"shouldHelp", "showHelp"}, {"shouldListProfilers", "listProfilers"}, {"shouldListResultFormats", "listResultFormats"}
+    };
+
+    @Override
+    public void execute() {
+        Params params = getParameters();
+        String[] args = params.getArguments().get().toArray(new String[0]);
+        Thread thread = Thread.currentThread();
+        ClassLoader previousLoader = thread.getContextClassLoader();
+        String previousClassPath = System.getProperty(JAVA_CLASS_PATH);
+        String previousTmpDir = System.getProperty(JAVA_IO_TMPDIR);
+        try (URLClassLoader loader = new URLClassLoader(toUrls(params.getClasspath()), ClassLoader.getPlatformClassLoader())) {
+            // forked benchmark JVMs are started with the class path of the launcher
+            System.setProperty(JAVA_CLASS_PATH, params.getClasspath().getAsPath());
+            System.setProperty(JAVA_IO_TMPDIR, params.getTemporaryDir().get().getAsFile().getAbsolutePath());
+            thread.setContextClassLoader(loader);
+            // the JMH main class exits the JVM on errors, which would kill the daemon, so the runner is used directly
+            Class<?> optionsClass = loader.loadClass(OPTIONS_CLASS);
+            Object options = optionsClass.getConstructor(String[].class).newInstance((Object) args);
+            if (!runOptionsAction(optionsClass, options)) {
+                Class<?> runnerClass = loader.loadClass("org.openjdk.jmh.runner.Runner");
+                Object runner = runnerClass.getConstructor(loader.loadClass("org.openjdk.jmh.runner.options.Options")).newInstance(options);
+                if (isSet(optionsClass, options, "shouldList")) {
+                    runnerClass.getMethod("list").invoke(runner);
+                } else if (isSet(optionsClass, options, "shouldListWithParams")) {
+                    runnerClass.getMethod("listWithParams", optionsClass).invoke(runner, options);
+                } else {
+                    runnerClass.getMethod("run").invoke(runner);
+                }
+            }
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (PARSE_ERROR_CLASS.equals(cause.getClass().getName())) {
+                throw new GradleException("Invalid JMH arguments: " + cause.getMessage(), cause);
+            }
+            throw new GradleException("JMH failed: " + cause.getMessage(), cause);
+        } catch (ReflectiveOperationException | IOException e) {
+            throw new GradleException("Unable to run JMH in the launcher daemon", e);
+        } finally {
+            thread.setContextClassLoader(previousLoader);
+            restore(JAVA_CLASS_PATH, previousClassPath);
+            restore(JAVA_IO_TMPDIR, previousTmpDir);
+        }
+    }
+
+    /**
+     * Executes the listing option which is set, if any, returning whether the benchmarks must not be run.
+     */
+    private static boolean runOptionsAction(Class<?> optionsClass, Object options) throws ReflectiveOperationException {
+        for (String[] action : OPTIONS_ACTIONS) {
+            if (isSet(optionsClass, options, action[0])) {
+                optionsClass.getMethod(action[1]).invoke(options);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSet(Class<?> optionsClass, Object options, String option) throws ReflectiveOperationException {
+        try {
+            return Boolean.TRUE.equals(optionsClass.getMethod(option).invoke(options));
+        } catch (NoSuchMethodException e) {
+            // not available in this version of JMH
+            return false;
+        }
+    }
+
+    private static void restore(String property, String value) {
+        if (value == null) {
+            System.clearProperty(property);
+        } else {
+            System.setProperty(property, value);
+        }
+    }
+
+    private static URL[] toUrls(Iterable<File> files) throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (File file : files) {
+            urls.add(file.toURI().toURL());
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    public interface Params extends WorkParameters {
+        ConfigurableFileCollection getClasspath();
+
+        ListProperty<String> getArguments();
+
+        DirectoryProperty getTemporaryDir();
+    }
+}
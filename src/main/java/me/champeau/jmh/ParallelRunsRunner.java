@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.workers.WorkQueue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the benchmarks between several JMH processes executed concurrently, each of them pinned to
+ * its own set of CPUs, then merges their results.
+ */
+class ParallelRunsRunner implements BenchmarkRunner {
+    private final JMHTask task;
+    private final int parallelRuns;
+
+    ParallelRunsRunner(JMHTask task, int parallelRuns) {
+        this.task = task;
+        this.parallelRuns = parallelRuns;
+    }
+
+    @Override
+    public void run(List<String> benchmarks) {
+        CpuSetService cpuSetService = task.getCpuSetService().get();
+        List<CpuSet> cpuSets = cpuSetService.acquire(parallelRuns);
+        try {
+            Map<String, Double> durations = BenchmarkShards.estimateDurations(task.getShardingHistory());
+            String classpath = task.computeClasspath().getAsPath();
+            File resultsFile = task.getResultsFile().get().getAsFile();
+            List<File> results = new ArrayList<>();
+            List<File> humanOutputs = new ArrayList<>();
+            WorkQueue queue = task.getWorkerExecutor().noIsolation();
+            for (int i = 0; i < cpuSets.size(); i++) {
+                List<String> runBenchmarks = BenchmarkShards.shard(benchmarks, i, cpuSets.size(), durations);
+                if (runBenchmarks.isEmpty()) {
+                    continue;
+                }
+                File runDir = new File(task.getTemporaryDir(), "run-" + i);
+                task.getFileSystemOperations().delete(spec -> spec.delete(runDir));
+                runDir.mkdirs();
+                List<String> args = task.collectArguments(runBenchmarks);
+                File result = new File(runDir, resultsFile.getName());
+                results.add(result);
+                JMHTask.applyCliArgs(args, new String[]{"-rff", result.getAbsolutePath()});
+                if (task.getHumanOutputFile().isPresent()) {
+                    File humanOutput = new File(runDir, task.getHumanOutputFile().get().getAsFile().getName());
+                    humanOutputs.add(humanOutput);
+                    JMHTask.applyCliArgs(args, new String[]{"-o", humanOutput.getAbsolutePath()});
+                }
+                List<String> commandLine = new ArrayList<>(cpuSets.get(i).pinningCommand());
+                commandLine.add(task.javaExecutable().getAbsolutePath());
+                commandLine.add("-D" + JMHTask.JAVA_IO_TMPDIR + "=" + runDir.getAbsolutePath());
+                commandLine.add("org.openjdk.jmh.Main");
+                commandLine.addAll(args);
+                task.getLogger().lifecycle("Running {} benchmarks on {}", runBenchmarks.size(), cpuSets.get(i));
+                task.getLogger().info("Running JMH with command line: " + commandLine);
+                queue.submit(JmhPinnedRunAction.class, params -> {
+                    params.getCommandLine().set(commandLine);
+                    task.getEnvironment().get().forEach((key, value) -> params.getEnvironment().put(key, String.valueOf(value)));
+                    params.getEnvironment().put("CLASSPATH", classpath);
+                });
+            }
+            queue.await();
+            String format = task.getResultFormat().get();
+            BenchmarkResultFiles.merge(results, resultsFile, format);
+            if (task.getHumanOutputFile().isPresent()) {
+                BenchmarkResultFiles.merge(humanOutputs, task.getHumanOutputFile().get().getAsFile(), "text");
+            }
+        } finally {
+            cpuSetService.release(cpuSets);
+        }
+    }
+}
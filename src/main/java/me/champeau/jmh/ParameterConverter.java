@@ -30,6 +30,19 @@ public class ParameterConverter {
     public static void collectParameters(JmhParameters from, final List<String> into) {
         // ordered as when running -help
         addOption(into, from.getIncludes(), "");
+        collectOptions(from, into);
+    }
+
+    /**
+     * Collects the JMH arguments, passing each of the given includes as a separate argument instead of
+     * the includes of the parameters.
+     */
+    public static void collectParameters(JmhParameters from, List<String> includes, final List<String> into) {
+        into.addAll(includes);
+        collectOptions(from, into);
+    }
+
+    private static void collectOptions(JmhParameters from, final List<String> into) {
         addIntOption(into, from.getIterations(), "i");
         addOption(into, from.getBenchmarkMode(), "bm");
         addIntOption(into, from.getBatchSize(), "bs");
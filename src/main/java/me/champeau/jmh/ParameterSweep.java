@@ -0,0 +1,358 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.api.InvalidUserDataException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Samples the space of benchmark parameters instead of executing their full Cartesian product, either with a
+ * pairwise covering, which executes every pair of values of two parameters at least once, or with a Latin
+ * hypercube, which spreads a given number of samples over the values of each parameter. Samples can then be
+ * refined around the configuration in which each benchmark performs the worst.
+ */
+class ParameterSweep {
+    static final String PAIRWISE = "pairwise";
+    static final String LATIN_HYPERCUBE = "latinHypercube";
+
+    private final List<String> names;
+    private final List<List<String>> values;
+
+    ParameterSweep(Map<String, List<String>> space) {
+        this.names = new ArrayList<>(space.keySet());
+        this.values = new ArrayList<>(space.values());
+        for (int i = 0; i < names.size(); i++) {
+            if (values.get(i).isEmpty()) {
+                throw new InvalidUserDataException("The benchmark parameter '" + names.get(i) + "' doesn't have any value to sweep");
+            }
+        }
+    }
+
+    /**
+     * Samples the parameter space with the given strategy, the number of samples only applying to Latin hypercubes.
+     */
+    List<Map<String, String>> sample(String strategy, int samples, long seed) {
+        if (PAIRWISE.equals(strategy)) {
+            return pairwise();
+        }
+        if (LATIN_HYPERCUBE.equals(strategy)) {
+            return latinHypercube(samples, seed);
+        }
+        throw new InvalidUserDataException("Unsupported parameter sweep '" + strategy + "'. Use '" + PAIRWISE + "' or '" + LATIN_HYPERCUBE + "'.");
+    }
+
+    /**
+     * Returns configurations covering every pair of values of two parameters, built greedily: each configuration
+     * starts from the first pair which isn't covered yet, and every other parameter gets the value covering the
+     * most pairs which aren't covered yet.
+     */
+    List<Map<String, String>> pairwise() {
+        int count = names.size();
+        if (count < 2) {
+            List<Map<String, String>> configurations = new ArrayList<>();
+            for (int v = 0; count == 1 && v < values.get(0).size(); v++) {
+                configurations.add(configuration(new int[]{v}));
+            }
+            return configurations;
+        }
+        Set<String> uncovered = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                for (int a = 0; a < values.get(i).size(); a++) {
+                    for (int b = 0; b < values.get(j).size(); b++) {
+                        uncovered.add(pair(i, a, j, b));
+                    }
+                }
+            }
+        }
+        List<Map<String, String>> configurations = new ArrayList<>();
+        while (!uncovered.isEmpty()) {
+            int[] seed = parsePair(uncovered.iterator().next());
+            int[] indexes = new int[count];
+            Arrays.fill(indexes, -1);
+            indexes[seed[0]] = seed[1];
+            indexes[seed[2]] = seed[3];
+            for (int p = 0; p < count; p++) {
+                if (indexes[p] >= 0) {
+                    continue;
+                }
+                int best = 0;
+                int bestCovered = -1;
+                for (int v = 0; v < values.get(p).size(); v++) {
+                    int covered = 0;
+                    for (int q = 0; q < count; q++) {
+                        if (indexes[q] >= 0 && uncovered.contains(q < p ? pair(q, indexes[q], p, v) : pair(p, v, q, indexes[q]))) {
+                            covered++;
+                        }
+                    }
+                    if (covered > bestCovered) {
+                        best = v;
+                        bestCovered = covered;
+                    }
+                }
+                indexes[p] = best;
+            }
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    uncovered.remove(pair(i, indexes[i], j, indexes[j]));
+                }
+            }
+            configurations.add(configuration(indexes));
+        }
+        return configurations;
+    }
+
+    /**
+     * Returns a Latin hypercube of the given number of samples: the values of each parameter are split into as
+     * many strata as samples, and each stratum is used by exactly one sample. Duplicate configurations, which
+     * occur when a parameter has fewer values than samples, are only returned once.
+     */
+    List<Map<String, String>> latinHypercube(int samples, long seed) {
+        Random random = new Random(seed);
+        int[][] strata = new int[names.size()][];
+        for (int p = 0; p < names.size(); p++) {
+            List<Integer> permutation = new ArrayList<>();
+            for (int s = 0; s < samples; s++) {
+                permutation.add(s);
+            }
+            Collections.shuffle(permutation, random);
+            strata[p] = permutation.stream().mapToInt(Integer::intValue).toArray();
+        }
+        Set<Map<String, String>> configurations = new LinkedHashSet<>();
+        for (int s = 0; s < samples; s++) {
+            int[] indexes = new int[names.size()];
+            for (int p = 0; p < names.size(); p++) {
+                indexes[p] = (int) ((long) strata[p][s] * values.get(p).size() / samples);
+            }
+            configurations.add(configuration(indexes));
+        }
+        return new ArrayList<>(configurations);
+    }
+
+    /**
+     * Returns the configurations which differ from the given one by the previous or next value of one parameter.
+     */
+    List<Map<String, String>> neighbours(Map<String, String> configuration) {
+        int[] indexes = new int[names.size()];
+        for (int p = 0; p < names.size(); p++) {
+            indexes[p] = values.get(p).indexOf(configuration.get(names.get(p)));
+            if (indexes[p] < 0) {
+                return Collections.emptyList();
+            }
+        }
+        List<Map<String, String>> neighbours = new ArrayList<>();
+        for (int p = 0; p < names.size(); p++) {
+            for (int step = -1; step <= 1; step += 2) {
+                int[] neighbour = indexes.clone();
+                neighbour[p] += step;
+                if (neighbour[p] >= 0 && neighbour[p] < values.get(p).size()) {
+                    neighbours.add(configuration(neighbour));
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Returns the configuration of the given parameters in which each benchmark, by name and mode, performs the
+     * worst: the lowest score in throughput mode, and the highest score in the other modes.
+     */
+    List<Map<String, String>> worstConfigurations(List<?> results) {
+        Map<String, Map<String, String>> worst = new LinkedHashMap<>();
+        Map<String, Double> worstScores = new LinkedHashMap<>();
+        for (Object item : results) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> result = (Map<?, ?>) item;
+            Double score = score(result);
+            Map<String, String> configuration = configurationOf(result);
+            if (score == null || configuration == null) {
+                continue;
+            }
+            String benchmark = result.get("benchmark") + " (" + result.get("mode") + ")";
+            boolean higherIsBetter = "thrpt".equals(String.valueOf(result.get("mode")));
+            Double previous = worstScores.get(benchmark);
+            if (previous == null || (higherIsBetter ? score < previous : score > previous)) {
+                worst.put(benchmark, configuration);
+                worstScores.put(benchmark, score);
+            }
+        }
+        return new ArrayList<>(new LinkedHashSet<>(worst.values()));
+    }
+
+    /**
+     * Groups configurations into batches which are each the Cartesian product of their values, so that a batch
+     * can be executed by a single JMH invocation. Configurations are grouped by all their values but those of
+     * the parameter producing the fewest batches.
+     */
+    List<Map<String, List<String>>> batches(List<Map<String, String>> configurations) {
+        List<Map<String, List<String>>> best = null;
+        for (String varying : names) {
+            Map<Map<String, String>, Map<String, List<String>>> groups = new LinkedHashMap<>();
+            for (Map<String, String> configuration : configurations) {
+                Map<String, String> key = new LinkedHashMap<>(configuration);
+                key.remove(varying);
+                Map<String, List<String>> batch = groups.computeIfAbsent(key, k -> {
+                    Map<String, List<String>> values = new LinkedHashMap<>();
+                    names.forEach(name -> values.put(name, new ArrayList<>()));
+                    return values;
+                });
+                for (String name : names) {
+                    List<String> batchValues = batch.get(name);
+                    if (!batchValues.contains(configuration.get(name))) {
+                        batchValues.add(configuration.get(name));
+                    }
+                }
+            }
+            if (best == null || groups.size() < best.size()) {
+                best = new ArrayList<>(groups.values());
+            }
+        }
+        return best == null ? Collections.emptyList() : best;
+    }
+
+    /**
+     * Writes the response surface of each benchmark: the score of every configuration which was executed, and the
+     * mean score for each value of each parameter.
+     */
+    void writeSurface(List<?> results, File file) {
+        Map<String, List<Map<?, ?>>> byBenchmark = new TreeMap<>();
+        for (Object item : results) {
+            if (item instanceof Map && configurationOf((Map<?, ?>) item) != null && score((Map<?, ?>) item) != null) {
+                Map<?, ?> result = (Map<?, ?>) item;
+                byBenchmark.computeIfAbsent(result.get("benchmark") + " (" + result.get("mode") + ")", k -> new ArrayList<>()).add(result);
+            }
+        }
+        StringBuilder report = new StringBuilder();
+        byBenchmark.forEach((benchmark, benchmarkResults) -> {
+            String unit = String.valueOf(((Map<?, ?>) benchmarkResults.get(0).get("primaryMetric")).get("scoreUnit"));
+            report.append(benchmark).append(", ").append(benchmarkResults.size()).append(" configurations, ").append(unit).append('\n');
+            int width = names.stream().mapToInt(String::length).max().orElse(0);
+            for (int p = 0; p < names.size(); p++) {
+                for (String value : values.get(p)) {
+                    width = Math.max(width, value.length());
+                }
+            }
+            StringBuilder header = new StringBuilder("  ");
+            for (String name : names) {
+                header.append(String.format(Locale.ROOT, "%-" + width + "s  ", name));
+            }
+            report.append(header).append(String.format(Locale.ROOT, "%14s", "Score")).append('\n');
+            benchmarkResults.sort((a, b) -> compare(configurationOf(a), configurationOf(b)));
+            for (Map<?, ?> result : benchmarkResults) {
+                StringBuilder row = new StringBuilder("  ");
+                Map<String, String> configuration = configurationOf(result);
+                for (String name : names) {
+                    row.append(String.format(Locale.ROOT, "%-" + width + "s  ", configuration.get(name)));
+                }
+                report.append(row).append(String.format(Locale.ROOT, "%14.3f", score(result))).append('\n');
+            }
+            report.append("  Mean score per value:\n");
+            for (int p = 0; p < names.size(); p++) {
+                StringBuilder effects = new StringBuilder("    ").append(names.get(p)).append(':');
+                for (String value : values.get(p)) {
+                    double sum = 0;
+                    int count = 0;
+                    for (Map<?, ?> result : benchmarkResults) {
+                        if (value.equals(configurationOf(result).get(names.get(p)))) {
+                            sum += score(result);
+                            count++;
+                        }
+                    }
+                    if (count > 0) {
+                        effects.append(String.format(Locale.ROOT, "  %s=%.3f (%d)", value, sum / count, count));
+                    }
+                }
+                report.append(effects).append('\n');
+            }
+            report.append('\n');
+        });
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int compare(Map<String, String> a, Map<String, String> b) {
+        for (int p = 0; p < names.size(); p++) {
+            int diff = values.get(p).indexOf(a.get(names.get(p))) - values.get(p).indexOf(b.get(names.get(p)));
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the values of the swept parameters in a result, or null if the result doesn't have them.
+     */
+    private Map<String, String> configurationOf(Map<?, ?> result) {
+        Object params = result.get("params");
+        if (!(params instanceof Map)) {
+            return null;
+        }
+        Map<String, String> configuration = new LinkedHashMap<>();
+        for (String name : names) {
+            Object value = ((Map<?, ?>) params).get(name);
+            if (value == null) {
+                return null;
+            }
+            configuration.put(name, value.toString());
+        }
+        return configuration;
+    }
+
+    private static Double score(Map<?, ?> result) {
+        Object metric = result.get("primaryMetric");
+        Object score = metric instanceof Map ? ((Map<?, ?>) metric).get("score") : null;
+        return score instanceof Number ? ((Number) score).doubleValue() : null;
+    }
+
+    private Map<String, String> configuration(int[] indexes) {
+        Map<String, String> configuration = new LinkedHashMap<>();
+        for (int p = 0; p < names.size(); p++) {
+            configuration.put(names.get(p), values.get(p).get(indexes[p]));
+        }
+        return configuration;
+    }
+
+    private static String pair(int i, int a, int j, int b) {
+        return i + ":" + a + ":" + j + ":" + b;
+    }
+
+    private static int[] parsePair(String pair) {
+        return Arrays.stream(pair.split(":")).mapToInt(Integer::parseInt).toArray();
+    }
+}
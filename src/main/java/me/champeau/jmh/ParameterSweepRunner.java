@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonSlurper;
+import org.gradle.api.InvalidUserDataException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Executes the configurations of parameters sampled by a parameter sweep, batched into JMH invocations, then the
+ * refinement rounds around the worst configuration of each benchmark, and writes the response surface of each
+ * benchmark next to the results file.
+ */
+class ParameterSweepRunner implements BenchmarkRunner {
+    private final JMHTask task;
+
+    ParameterSweepRunner(JMHTask task) {
+        this.task = task;
+    }
+
+    @Override
+    public void run(List<String> benchmarks) {
+        if (!"json".equalsIgnoreCase(task.getResultFormat().get())) {
+            throw new InvalidUserDataException("Parameter sweeps require the JSON result format");
+        }
+        Map<String, List<String>> space = task.getBenchmarkParameters().getOrElse(Collections.emptyMap());
+        if (space.isEmpty()) {
+            throw new InvalidUserDataException("Parameter sweeps require the values of the parameters to be set in benchmarkParameters");
+        }
+        ParameterSweep sweep = new ParameterSweep(space);
+        int samples = task.getSweepSamples().getOrElse(space.values().stream().mapToInt(List::size).max().orElse(1));
+        long total = space.values().stream().mapToLong(List::size).reduce(1, (a, b) -> a * b);
+        List<Map<String, String>> configurations = sweep.sample(task.getParameterSweep().get(), samples, 0);
+        File sweepDir = new File(task.getTemporaryDir(), "sweep");
+        task.getFileSystemOperations().delete(spec -> spec.delete(sweepDir));
+        File resultsFile = task.getResultsFile().get().getAsFile();
+        File humanOutputFile = task.getHumanOutputFile().isPresent() ? task.getHumanOutputFile().get().getAsFile() : null;
+        Set<Map<String, String>> executed = new LinkedHashSet<>();
+        List<File> results = new ArrayList<>();
+        List<File> humanOutputs = new ArrayList<>();
+        int refinements = task.getSweepRefinements().getOrElse(0);
+        for (int round = 0; !configurations.isEmpty(); round++) {
+            task.getLogger().lifecycle(round == 0 ? "Sweeping {} of {} parameter configurations" : "Refining the sweep with {} more of {} parameter configurations",
+                    configurations.size(), total);
+            Map<String, List<String>> groupArgs = new LinkedHashMap<>();
+            for (Map<String, List<String>> batch : sweep.batches(configurations)) {
+                List<String> args = task.collectArguments(benchmarks);
+                for (int i = args.size() - 2; i >= 0; i--) {
+                    if ("-p".equals(args.get(i))) {
+                        args.remove(i + 1);
+                        args.remove(i);
+                    }
+                }
+                batch.forEach((name, values) -> {
+                    args.add("-p");
+                    args.add(name + "=" + String.join(",", values));
+                });
+                groupArgs.put("parameters " + batch, args);
+            }
+            task.runInGroups(new File(sweepDir, "round-" + round), groupArgs);
+            executed.addAll(configurations);
+            results.add(moveTo(resultsFile, new File(sweepDir, "round-" + round + "-" + resultsFile.getName())));
+            if (humanOutputFile != null) {
+                humanOutputs.add(moveTo(humanOutputFile, new File(sweepDir, "round-" + round + "-" + humanOutputFile.getName())));
+            }
+            if (round >= refinements) {
+                break;
+            }
+            BenchmarkResultFiles.merge(results, resultsFile, "json");
+            Object json = new JsonSlurper().parse(resultsFile);
+            Set<Map<String, String>> neighbours = new LinkedHashSet<>();
+            for (Map<String, String> worst : sweep.worstConfigurations(json instanceof List ? (List<?>) json : Collections.emptyList())) {
+                neighbours.addAll(sweep.neighbours(worst));
+            }
+            neighbours.removeAll(executed);
+            configurations = new ArrayList<>(neighbours);
+        }
+        BenchmarkResultFiles.merge(results, resultsFile, "json");
+        if (humanOutputFile != null) {
+            BenchmarkResultFiles.merge(humanOutputs, humanOutputFile, "text");
+        }
+        Object json = new JsonSlurper().parse(resultsFile);
+        String name = resultsFile.getName();
+        File surface = new File(resultsFile.getParentFile(), (name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name) + "-sweep.txt");
+        sweep.writeSurface(json instanceof List ? (List<?>) json : Collections.emptyList(), surface);
+        task.getLogger().lifecycle("Swept {} of {} parameter configurations, response surface written to {}", executed.size(), total, surface);
+    }
+
+    private static File moveTo(File file, File target) {
+        try {
+            if (file.isFile()) {
+                Files.move(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return target;
+    }
+}
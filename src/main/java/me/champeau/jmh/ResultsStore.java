@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * An append-only store of benchmark results, accumulating the results of all runs. Results are stored as JSON
+ * lines in a data file. Each benchmark has an index file of its own, named after a hash of the benchmark, holding
+ * the positions of its results in the data file, next to a file listing the stored benchmarks. The results of a
+ * benchmark are therefore read without scanning the index or the results of the other benchmarks.
+ */
+class ResultsStore {
+    static final String DATA_FILE = "results.jsonl";
+    static final String BENCHMARKS_FILE = "benchmarks.txt";
+    static final String INDEX_DIR = "index";
+
+    private final File dataFile;
+    private final File benchmarksFile;
+    private final File indexDir;
+
+    ResultsStore(File directory) {
+        this.dataFile = new File(directory, DATA_FILE);
+        this.benchmarksFile = new File(directory, BENCHMARKS_FILE);
+        this.indexDir = new File(directory, INDEX_DIR);
+    }
+
+    /**
+     * Appends the results of a run, read from a JMH JSON results file.
+     */
+    void append(Run run, File jsonResults) {
+        Object json = new JsonSlurper().parse(jsonResults);
+        if (!(json instanceof List)) {
+            return;
+        }
+        StringBuilder data = new StringBuilder();
+        List<String> benchmarks = new ArrayList<>();
+        List<long[]> positions = new ArrayList<>();
+        long offset = 0;
+        for (Object item : (List<?>) json) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> record = toRecord(run, (Map<?, ?>) item);
+            String line = JsonOutput.toJson(record) + "\n";
+            int length = line.getBytes(StandardCharsets.UTF_8).length;
+            benchmarks.add(sanitize(record.get("benchmark")));
+            positions.add(new long[]{offset, length});
+            data.append(line);
+            offset += length;
+        }
+        if (benchmarks.isEmpty()) {
+            return;
+        }
+        // tasks of the same build may append concurrently, and several builds may share a store
+        synchronized (ResultsStore.class) {
+            try {
+                Files.createDirectories(dataFile.getParentFile().toPath());
+                try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    FileLock lock = channel.lock();
+                    try {
+                        long start = channel.size();
+                        channel.position(start);
+                        channel.write(ByteBuffer.wrap(data.toString().getBytes(StandardCharsets.UTF_8)));
+                        Map<String, StringBuilder> indexes = new LinkedHashMap<>();
+                        for (int i = 0; i < benchmarks.size(); i++) {
+                            long[] position = positions.get(i);
+                            indexes.computeIfAbsent(benchmarks.get(i), b -> new StringBuilder())
+                                    .append(start + position[0]).append('\t').append(position[1]).append('\n');
+                        }
+                        Files.createDirectories(indexDir.toPath());
+                        for (Map.Entry<String, StringBuilder> index : indexes.entrySet()) {
+                            File indexFile = indexFileOf(index.getKey());
+                            if (!indexFile.exists()) {
+                                append(benchmarksFile, index.getKey() + "\n");
+                            }
+                            append(indexFile, index.getValue().toString());
+                        }
+                    } finally {
+                        lock.release();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the stored results of the benchmarks whose name matches the given predicate, in the order they were
+     * stored. Only the index files of the matching benchmarks are read.
+     */
+    List<Map<String, Object>> query(Predicate<String> benchmarkFilter) {
+        if (!benchmarksFile.isFile() || !dataFile.isFile()) {
+            return Collections.emptyList();
+        }
+        List<long[]> positions = new ArrayList<>();
+        try {
+            for (String benchmark : Files.readAllLines(benchmarksFile.toPath(), StandardCharsets.UTF_8)) {
+                File indexFile = indexFileOf(benchmark);
+                if (benchmark.isEmpty() || !benchmarkFilter.test(benchmark) || !indexFile.isFile()) {
+                    continue;
+                }
+                for (String line : Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+                    int separator = line.indexOf('\t');
+                    if (separator > 0) {
+                        positions.add(new long[]{Long.parseLong(line.substring(0, separator)), Long.parseLong(line.substring(separator + 1))});
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        positions.sort(Comparator.comparingLong(position -> position[0]));
+        List<Map<String, Object>> results = new ArrayList<>();
+        try (RandomAccessFile data = new RandomAccessFile(dataFile, "r")) {
+            for (long[] position : positions) {
+                byte[] bytes = new byte[(int) position[1]];
+                data.seek(position[0]);
+                data.readFully(bytes);
+                @SuppressWarnings("unchecked")
+                Map<String, Object> record = (Map<String, Object>) new JsonSlurper().parseText(new String(bytes, StandardCharsets.UTF_8));
+                results.add(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return results;
+    }
+
+    private File indexFileOf(String benchmark) {
+        return new File(indexDir, ClassDependencies.toHex(ClassDependencies.sha256().digest(benchmark.getBytes(StandardCharsets.UTF_8))) + ".idx");
+    }
+
+    private static void append(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Groups results by benchmark, mode and parameters, preserving their order.
+     */
+    static Map<String, List<Map<String, Object>>> series(List<Map<String, Object>> results) {
+        Map<String, List<Map<String, Object>>> series = new TreeMap<>();
+        for (Map<String, Object> result : results) {
+            Map<?, ?> params = (Map<?, ?>) result.get("params");
+            String name = result.get("benchmark") + " (" + result.get("mode") + ")" + (params == null || params.isEmpty() ? "" : " " + params);
+            series.computeIfAbsent(name, n -> new ArrayList<>()).add(result);
+        }
+        return series;
+    }
+
+    private static Map<String, Object> toRecord(Run run, Map<?, ?> result) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("run", run.id);
+        record.put("timestamp", run.timestamp);
+        record.put("revision", run.revision);
+        record.put("task", run.task);
+        record.put("benchmark", result.get("benchmark"));
+        record.put("mode", result.get("mode"));
+        record.put("threads", result.get("threads"));
+        record.put("forks", result.get("forks"));
+        record.put("jdkVersion", result.get("jdkVersion"));
+        Object params = result.get("params");
+        record.put("params", params instanceof Map ? new TreeMap<>((Map<?, ?>) params) : Collections.emptyMap());
+        Object primaryMetric = result.get("primaryMetric");
+        if (primaryMetric instanceof Map) {
+            Map<?, ?> metric = (Map<?, ?>) primaryMetric;
+            record.put("score", metric.get("score"));
+            record.put("scoreError", metric.get("scoreError"));
+            record.put("scoreUnit", metric.get("scoreUnit"));
+        }
+        return record;
+    }
+
+    private static String sanitize(Object value) {
+        return value == null ? "" : value.toString().replace('\t', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Identifies a run of a JMH task.
+     */
+    static final class Run {
+        private final String id;
+        private final long timestamp;
+        private final String revision;
+        private final String task;
+
+        Run(String id, long timestamp, String revision, String task) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.revision = revision;
+            this.task = task;
+        }
+    }
+}
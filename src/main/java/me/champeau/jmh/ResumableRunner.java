@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes the benchmarks of each class in their own JMH invocation, checkpointing the results of every invocation,
+ * so that a run which was interrupted resumes from the first class which didn't complete.
+ */
+class ResumableRunner implements BenchmarkRunner {
+    private final JMHTask task;
+
+    ResumableRunner(JMHTask task) {
+        this.task = task;
+    }
+
+    @Override
+    public void run(List<String> benchmarks) {
+        Map<String, List<String>> classes = new LinkedHashMap<>();
+        for (String benchmark : benchmarks) {
+            classes.computeIfAbsent(benchmark.substring(0, Math.max(benchmark.lastIndexOf('.'), 0)), c -> new ArrayList<>()).add(benchmark);
+        }
+        Map<String, List<String>> groupArgs = new LinkedHashMap<>();
+        classes.forEach((className, group) -> groupArgs.put("benchmarks of " + className, task.collectArguments(group)));
+        task.runInGroups(new File(task.getTemporaryDir(), "resumable"), groupArgs);
+    }
+}
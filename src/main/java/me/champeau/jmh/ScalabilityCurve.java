@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The throughput of a benchmark at several thread counts, from which its speedup, parallel efficiency and
+ * Universal Scalability Law coefficients are computed. The law models the throughput at {@code N} threads as
+ * {@code X(N) = X(1) * N / (1 + sigma * (N - 1) + kappa * N * (N - 1))}, where {@code sigma} measures contention
+ * and {@code kappa} the cost of keeping shared data coherent.
+ */
+class ScalabilityCurve {
+    private final String unit;
+    private final TreeMap<Integer, Double> throughputs = new TreeMap<>();
+    private double sigma = Double.NaN;
+    private double kappa = Double.NaN;
+
+    ScalabilityCurve(String unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * Returns the default thread counts: powers of two up to the number of available processors, and the number
+     * of available processors itself.
+     */
+    static List<Integer> defaultThreads(int processors) {
+        List<Integer> threads = new ArrayList<>();
+        for (int count = 1; count < processors; count *= 2) {
+            threads.add(count);
+        }
+        threads.add(processors);
+        return threads;
+    }
+
+    /**
+     * Builds the curve of each benchmark, by name, mode and parameters, from JMH JSON results. Throughput is the
+     * score in throughput mode, and the number of threads divided by the score in average and sample time modes.
+     */
+    static Map<String, ScalabilityCurve> fromResults(List<?> results) {
+        Map<String, ScalabilityCurve> curves = new TreeMap<>();
+        for (Object item : results) {
+            if (!(item instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> result = (Map<?, ?>) item;
+            String mode = String.valueOf(result.get("mode"));
+            Object metric = result.get("primaryMetric");
+            if (!(metric instanceof Map) || !(result.get("threads") instanceof Number) || "ss".equals(mode)) {
+                continue;
+            }
+            Object score = ((Map<?, ?>) metric).get("score");
+            if (!(score instanceof Number) || ((Number) score).doubleValue() <= 0) {
+                continue;
+            }
+            int threads = ((Number) result.get("threads")).intValue();
+            String unit = String.valueOf(((Map<?, ?>) metric).get("scoreUnit"));
+            boolean throughputMode = "thrpt".equals(mode);
+            Object params = result.get("params");
+            String name = result.get("benchmark") + " (" + mode + ")"
+                    + (params instanceof Map && !((Map<?, ?>) params).isEmpty() ? " " + new TreeMap<>((Map<?, ?>) params) : "");
+            ScalabilityCurve curve = curves.computeIfAbsent(name, k -> new ScalabilityCurve(throughputMode ? unit : "ops/" + unit.substring(0, Math.max(0, unit.indexOf('/')))));
+            double value = ((Number) score).doubleValue();
+            curve.add(threads, throughputMode ? value : threads / value);
+        }
+        curves.values().forEach(ScalabilityCurve::fit);
+        return curves;
+    }
+
+    void add(int threads, double throughput) {
+        throughputs.put(threads, throughput);
+    }
+
+    /**
+     * The throughput relative to the throughput of the smallest thread count, scaled as if it was one thread.
+     */
+    double speedup(int threads) {
+        Map.Entry<Integer, Double> first = throughputs.firstEntry();
+        return throughputs.get(threads) / (first.getValue() / first.getKey());
+    }
+
+    double efficiency(int threads) {
+        return speedup(threads) / threads;
+    }
+
+    double getSigma() {
+        return sigma;
+    }
+
+    double getKappa() {
+        return kappa;
+    }
+
+    /**
+     * Fits the Universal Scalability Law by least squares on its linearized form {@code N / C(N) - 1 =
+     * sigma * (N - 1) + kappa * N * (N - 1)}, {@code C(N)} being the speedup. Coefficients are constrained to be
+     * positive, and remain unknown with fewer than two thread counts besides one thread.
+     */
+    void fit() {
+        double sxx = 0;
+        double sxz = 0;
+        double szz = 0;
+        double sxy = 0;
+        double szy = 0;
+        int points = 0;
+        for (int threads : throughputs.keySet()) {
+            if (threads <= 1) {
+                continue;
+            }
+            double x = threads - 1;
+            double z = threads * (threads - 1.0);
+            double y = threads / speedup(threads) - 1;
+            sxx += x * x;
+            sxz += x * z;
+            szz += z * z;
+            sxy += x * y;
+            szy += z * y;
+            points++;
+        }
+        if (points < 2) {
+            return;
+        }
+        double determinant = sxx * szz - sxz * sxz;
+        sigma = (sxy * szz - szy * sxz) / determinant;
+        kappa = (szy * sxx - sxy * sxz) / determinant;
+        if (kappa < 0) {
+            kappa = 0;
+            sigma = sxy / sxx;
+        }
+        if (sigma < 0) {
+            sigma = 0;
+            kappa = Math.max(0, szy / szz);
+        }
+    }
+
+    /**
+     * The thread count at which the fitted throughput peaks, or NaN if it doesn't have a peak.
+     */
+    double peakThreads() {
+        return kappa > 0 && sigma < 1 ? Math.sqrt((1 - sigma) / kappa) : Double.NaN;
+    }
+
+    static void writeReport(Map<String, ScalabilityCurve> curves, File file) {
+        StringBuilder report = new StringBuilder();
+        curves.forEach((name, curve) -> {
+            report.append(name).append(", throughput in ").append(curve.unit).append('\n');
+            report.append(String.format(Locale.ROOT, "  %7s  %14s  %8s  %10s%n", "Threads", "Throughput", "Speedup", "Efficiency"));
+            curve.throughputs.forEach((threads, throughput) -> report.append(String.format(Locale.ROOT, "  %7d  %14.3f  %8.2f  %9.1f%%%n",
+                    threads, throughput, curve.speedup(threads), curve.efficiency(threads) * 100)));
+            if (Double.isNaN(curve.sigma)) {
+                report.append("  Universal Scalability Law: not enough thread counts to fit\n");
+            } else {
+                report.append(String.format(Locale.ROOT, "  Universal Scalability Law: contention (sigma) %.5f, coherency (kappa) %.6f", curve.sigma, curve.kappa));
+                double peak = curve.peakThreads();
+                report.append(Double.isNaN(peak) ? "" : String.format(Locale.ROOT, ", peak throughput at %.0f threads", peak)).append('\n');
+            }
+            report.append('\n');
+        });
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import groovy.json.JsonSlurper;
+import org.gradle.api.InvalidUserDataException;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes the benchmarks once per thread count, merges their results, and writes the scalability report of
+ * each benchmark next to the results file.
+ */
+class ScalabilityRunner implements BenchmarkRunner {
+    private final JMHTask task;
+
+    ScalabilityRunner(JMHTask task) {
+        this.task = task;
+    }
+
+    @Override
+    public void run(List<String> benchmarks) {
+        if (!"json".equalsIgnoreCase(task.getResultFormat().get())) {
+            throw new InvalidUserDataException("The scalability mode requires the JSON result format");
+        }
+        Map<String, List<String>> groupArgs = new LinkedHashMap<>();
+        for (int threads : threads(task)) {
+            List<String> args = task.collectArguments(benchmarks);
+            JMHTask.overrideOption(args, "-t", String.valueOf(threads));
+            groupArgs.put(benchmarks.size() + " benchmarks with " + threads + " threads", args);
+        }
+        File scalabilityDir = new File(task.getTemporaryDir(), "scalability");
+        task.getFileSystemOperations().delete(spec -> spec.delete(scalabilityDir));
+        task.runInGroups(scalabilityDir, groupArgs);
+        File resultsFile = task.getResultsFile().get().getAsFile();
+        Object json = new JsonSlurper().parse(resultsFile);
+        String name = resultsFile.getName();
+        File report = new File(resultsFile.getParentFile(), (name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name) + "-scalability.txt");
+        ScalabilityCurve.writeReport(ScalabilityCurve.fromResults(json instanceof List ? (List<?>) json : Collections.emptyList()), report);
+        task.getLogger().lifecycle("Scalability report written to {}", report);
+    }
+
+    /**
+     * Returns the thread counts the benchmarks are executed with, which default to powers of two up to the number of
+     * available processors.
+     */
+    static List<Integer> threads(JMHTask task) {
+        List<Integer> threads = task.getScalabilityThreads().getOrElse(Collections.emptyList());
+        return threads.isEmpty() ? ScalabilityCurve.defaultThreads(Runtime.getRuntime().availableProcessors()) : threads;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.champeau.jmh;
+
+import org.gradle.workers.WorkQueue;
+
+import java.util.List;
+
+/**
+ * Runs JMH in a worker daemon, which Gradle keeps alive between builds as long as its executable
+ * and environment don't change. Unlike the {@link BenchmarkRunner} implementations, it isn't an
+ * execution mode: it replaces the forked JMH process of every invocation, whatever the mode.
+ */
+class WarmLauncher {
+    private final JMHTask task;
+
+    WarmLauncher(JMHTask task) {
+        this.task = task;
+    }
+
+    void launch(List<String> args) {
+        WorkQueue queue = task.getWorkerExecutor().processIsolation(spec -> {
+            spec.getForkOptions().setExecutable(task.javaExecutable());
+            task.getEnvironment().get().forEach((key, value) -> spec.getForkOptions().environment(key, value));
+        });
+        queue.submit(JmhWarmRunAction.class, params -> {
+            params.getClasspath().from(task.computeClasspath());
+            params.getArguments().set(args);
+            params.getTemporaryDir().set(task.getTemporaryDir());
+        });
+        queue.await();
+    }
+}
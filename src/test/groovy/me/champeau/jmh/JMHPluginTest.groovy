@@ -16,7 +16,10 @@
 package me.champeau.jmh
 
 import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar
+import org.gradle.api.GradleException
+import org.gradle.api.InvalidUserDataException
 import org.gradle.api.Project
+import org.gradle.api.ProjectConfigurationException
 import org.gradle.api.file.DuplicatesStrategy
 import org.gradle.api.tasks.bundling.Jar
 import org.gradle.testfixtures.ProjectBuilder
@@ -136,6 +139,761 @@ class JMHPluginTest extends Specification {
         project.jmh.duplicateClassesStrategy.get() == DuplicatesStrategy.INCLUDE
     }
 
+    def "in-process bytecode generation is configured from the extension"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.repositories {
+            mavenCentral()
+        }
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        when:
+        def task = project.tasks.findByName('jmhRunBytecodeGenerator') as JmhBytecodeGeneratorTask
+
+        then:
+        !task.inProcess.get()
+
+        when:
+        project.jmh.bytecodeGeneratorInProcess.set(true)
+
+        then:
+        task.inProcess.get()
+    }
+
+    def "the bytecode generator is forked when it has JVM arguments"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+        def task = project.tasks.findByName('jmhRunBytecodeGenerator') as JmhBytecodeGeneratorTask
+
+        expect:
+        task.forkReason() == null
+
+        when:
+        task.jvmArgs.set(['-Xmx1g'])
+
+        then:
+        task.forkReason() == 'JVM arguments are set on task :jmhRunBytecodeGenerator'
+    }
+
+    def "benchmarks are executed from the JMH jar by default"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.repositories {
+            mavenCentral()
+        }
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        when:
+        def task = project.tasks.findByName('jmh') as JMHTask
+
+        then:
+        task.jarArchive.present
+        task.taskDependencies.getDependencies(task)*.name.contains('jmhJar')
+    }
+
+    def "benchmarks can be executed without the JMH jar"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.repositories {
+            mavenCentral()
+        }
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        when:
+        project.jmh.useJmhJar.set(false)
+        def task = project.tasks.findByName('jmh') as JMHTask
+        def dependencies = task.taskDependencies.getDependencies(task)*.name
+
+        then:
+        !task.jarArchive.present
+        !dependencies.contains('jmhJar')
+        dependencies.containsAll(['jmhRunBytecodeGenerator', 'jmhCompileGeneratedClasses', 'jmhClasses'])
+    }
+
+    def "thin JMH jar depends on the libraries task"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.repositories {
+            mavenCentral()
+        }
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        when:
+        project.jmh.thinJar.set(true)
+        def jar = project.tasks.findByName('jmhJar')
+        def libraries = project.tasks.findByName('jmhJarLibraries') as JmhLibrariesTask
+
+        then:
+        jar.taskDependencies.getDependencies(jar)*.name.contains('jmhJarLibraries')
+        libraries.destinationDirectory.get().asFile == project.layout.buildDirectory.dir('libs/lib').get().asFile
+    }
+
+    def "JMH jar is reproducible"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.repositories {
+            mavenCentral()
+        }
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        when:
+        def jar = project.tasks.findByName('jmhJar') as Jar
+
+        then:
+        !jar.preserveFileTimestamps
+        jar.reproducibleFileOrder
+    }
+
+    def "libraries with the same file name are renamed"() {
+        given:
+        def first = new File(File.createTempDir(), 'lib.jar')
+        def second = new File(File.createTempDir(), 'lib.jar')
+        [first, second]*.text = ''
+
+        expect:
+        JmhLibrariesTask.libraryNames([first, second]).values() as List == ['lib.jar', 'lib-2.jar']
+        JmhLibrariesTask.manifestClassPath([first, second]) == 'lib/lib.jar lib/lib-2.jar'
+    }
+
+    def "benchmarks are sharded deterministically"() {
+        given:
+        def benchmarks = ['a.B.m1', 'a.B.m2', 'a.B.m3', 'a.B.m4', 'a.B.m5']
+
+        expect:
+        BenchmarkShards.shard(benchmarks, 0, 2, [:]) == ['a.B.m1', 'a.B.m3', 'a.B.m5']
+        BenchmarkShards.shard(benchmarks.reverse(), 1, 2, [:]) == ['a.B.m2', 'a.B.m4']
+    }
+
+    def "shards are balanced by estimated duration"() {
+        given:
+        def benchmarks = ['a.B.m1', 'a.B.m2', 'a.B.m3', 'a.B.m4']
+        def durations = ['a.B.m1': 100d, 'a.B.m2': 40d, 'a.B.m3': 30d, 'a.B.m4': 20d]
+
+        expect:
+        BenchmarkShards.shard(benchmarks, 0, 2, durations) == ['a.B.m1']
+        BenchmarkShards.shard(benchmarks, 1, 2, durations) == ['a.B.m2', 'a.B.m3', 'a.B.m4']
+        BenchmarkShards.seconds('500 ms') == 0.5d
+        BenchmarkShards.seconds('1 min') == 60d
+    }
+
+    def "CPU sets never span several NUMA nodes"() {
+        given:
+        def nodes = [new CpuSet(0, 0..7), new CpuSet(1, 8..15)]
+
+        expect:
+        CpuSetService.partition(nodes, 2)*.toString() == ['node 0, cpus 0-7', 'node 1, cpus 8-15']
+        CpuSetService.partition(nodes, 3)*.toString() == ['node 0, cpus 0-3', 'node 0, cpus 4-7', 'node 1, cpus 8-15']
+        CpuSet.toCpuList(CpuSet.parseCpuList('0-3,5,7-8')) == '0-3,5,7-8'
+    }
+
+    def "JMH tasks are executed one at a time by default"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        when:
+        project.tasks.findByName('jmh')
+        def registration = project.gradle.sharedServices.registrations.getByName('maxConcurrent' + JMHTask.name)
+
+        then:
+        registration.maxParallelUsages.get() == 1
+    }
+
+    def "JMH tasks are admitted within the CPU budget"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+        project.jmh.cpuBudget = 4
+        project.jmh.memoryBudget = '8g'
+
+        when:
+        def task = project.tasks.findByName('jmh') as JMHTask
+        def registration = project.gradle.sharedServices.registrations.getByName('maxConcurrent' + JMHTask.name)
+        def service = task.executionControl.get()
+        def first = service.reserve('first', 3, 0)
+        def admitted = false
+        def thread = Thread.start {
+            service.reserve('second', 2, 1L << 30).release()
+            admitted = true
+        }
+        thread.join(200)
+
+        then:
+        registration.maxParallelUsages.get() == Math.min(4, Math.max(1, project.gradle.startParameter.maxWorkerCount - 1))
+        !admitted
+
+        when:
+        first.release()
+        thread.join()
+
+        then:
+        admitted
+    }
+
+    def "the memory required by JMH tasks is read from their maximum heap size"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+        def task = project.tasks.findByName('jmh') as JMHTask
+
+        when:
+        task.jvmArgs = ['-server -Xmx2g']
+        task.parallelRuns = 2
+
+        then:
+        task.requiredMemory() == 4L << 30
+
+        when:
+        task.jvmArgs = []
+
+        then:
+        task.requiredMemory() == 2L << 30
+
+        when:
+        task.jvmArgs = ['-Xmx']
+        task.requiredMemory()
+
+        then:
+        def e = thrown(InvalidUserDataException)
+        e.message == "Invalid maximum heap size '-Xmx' in the JVM arguments of task :jmh, expected a value such as -Xmx512m or -Xmx4g"
+    }
+
+    def "JMH tasks of all the projects must declare the same budgets"() {
+        given:
+        Project root = ProjectBuilder.builder().build()
+        Project sub = ProjectBuilder.builder().withName('sub').withParent(root).build()
+        [root, sub].each {
+            it.apply plugin: 'java'
+            it.apply plugin: 'me.champeau.jmh'
+        }
+        root.tasks.findByName('jmh')
+        def task = sub.tasks.findByName('jmh') as JMHTask
+        // budgets declared after the tasks are realized are taken into account
+        [root, sub].each {
+            it.jmh.cpuBudget = 8
+        }
+        sub.jmh.memoryBudget = '8g'
+
+        when:
+        task.executionControl.get()
+
+        then:
+        def e = thrown(Exception)
+        def cause = e
+        while (!(cause instanceof InvalidUserDataException) && cause.cause != null) {
+            cause = cause.cause
+        }
+        cause.message.startsWith("The projects of the build declare different JMH budgets:")
+        cause.message.contains("project ':sub': cpuBudget 8, memoryBudget 8589934592")
+        cause.message.contains("root project 'test': cpuBudget 8, memoryBudget not set")
+    }
+
+    def "results are queried from the index of their benchmark"() {
+        given:
+        def dir = File.createTempDir()
+        def results = new File(dir, 'results.json')
+        results.text = '''[
+            {"benchmark": "a.B.m", "mode": "thrpt", "params": {"x": "1"}, "primaryMetric": {"score": 1.5, "scoreError": 0.1, "scoreUnit": "ops/s"}},
+            {"benchmark": "a.C.n", "mode": "avgt", "primaryMetric": {"score": 3.0, "scoreError": 0.2, "scoreUnit": "ns/op"}}
+        ]'''
+        def store = new ResultsStore(new File(dir, 'store'))
+
+        when:
+        store.append(new ResultsStore.Run('1', 1000L, 'abc', ':jmh'), results)
+        store.append(new ResultsStore.Run('2', 2000L, 'def', ':jmh'), results)
+        def history = store.query { it == 'a.B.m' }
+
+        then:
+        new File(dir, 'store/benchmarks.txt').readLines() == ['a.B.m', 'a.C.n']
+        new File(dir, 'store/index').listFiles().size() == 2
+        history*.revision == ['abc', 'def']
+        history*.score == [1.5, 1.5]
+        history*.params == [[x: '1'], [x: '1']]
+    }
+
+    def "regressions depend on the benchmark mode and on confidence intervals"() {
+        given:
+        def baseline = [
+                [benchmark: 'a.B.thrpt', mode: 'thrpt', primaryMetric: [score: 100.0, scoreError: 1.0]],
+                [benchmark: 'a.B.avgt', mode: 'avgt', primaryMetric: [score: 10.0, scoreError: 0.1]],
+                [benchmark: 'a.B.noisy', mode: 'avgt', primaryMetric: [score: 10.0, scoreError: 5.0]],
+        ]
+        def current = [
+                [benchmark: 'a.B.thrpt', mode: 'thrpt', primaryMetric: [score: 80.0, scoreError: 1.0]],
+                [benchmark: 'a.B.avgt', mode: 'avgt', primaryMetric: [score: 8.0, scoreError: 0.1]],
+                [benchmark: 'a.B.noisy', mode: 'avgt', primaryMetric: [score: 12.0, scoreError: 5.0]],
+        ]
+
+        when:
+        def comparisons = BenchmarkComparison.compare(baseline, current).collectEntries { [it.name, it] }
+
+        then:
+        comparisons['a.B.thrpt (thrpt)'].isRegression(0.05)
+        !comparisons['a.B.avgt (avgt)'].isRegression(0.05)
+        comparisons['a.B.avgt (avgt)'].isImprovement(0.05)
+        !comparisons['a.B.noisy (avgt)'].isRegression(0.05)
+    }
+
+    def "only benchmarks depending on changed classes are executed again"() {
+        given:
+        def classesDir = File.createTempDir()
+        def stateDir = File.createTempDir()
+        def packageDir = new File(classesDir, 'me/champeau/jmh')
+        packageDir.mkdirs()
+        [CpuSet, CpuSetService, BenchmarkShards].each { type ->
+            new File(packageDir, "${type.simpleName}.class").bytes = type.getResourceAsStream("${type.simpleName}.class").bytes
+        }
+        def benchmarks = ['me.champeau.jmh.BenchmarkShards.select', 'me.champeau.jmh.CpuSetService.acquire']
+        def results = new File(stateDir, 'results.json')
+        def run = { String environment, List<String> executed ->
+            def incremental = new IncrementalBenchmarks(new File(stateDir, 'incremental'), [classesDir], environment)
+            def affected = incremental.affected(benchmarks)
+            results.text = groovy.json.JsonOutput.toJson(executed.collect { [benchmark: it] })
+            incremental.complete(results)
+            affected
+        }
+
+        expect:
+        run('env', benchmarks) == benchmarks
+        run('env', []) == []
+        new groovy.json.JsonSlurper().parse(results)*.benchmark == benchmarks
+
+        when: 'a class the second benchmark depends on changes'
+        new File(packageDir, 'CpuSet.class') << new byte[1]
+
+        then:
+        run('env', ['me.champeau.jmh.CpuSetService.acquire']) == ['me.champeau.jmh.CpuSetService.acquire']
+        run('other', benchmarks) == benchmarks
+    }
+
+    def "adaptive iterations depend on the stability of scores"() {
+        given:
+        def adaptive = new AdaptiveIterations(1, 10, 3, 20, 0.02d, 0.05d)
+
+        expect:
+        adaptive.calibrationIterations() == 13
+        adaptive.plan([50d, 80d, 99d, 100d, 100.5d, 99.5d, 100d, 100.2d, 99.8d, 100.1d, 99.9d, 100d, 100.3d]) == new AdaptiveIterations.Plan(2, 4)
+        adaptive.plan((0..<13).collect { it % 2 == 0 ? 50d : 150d }) == new AdaptiveIterations.Plan(10, 20)
+    }
+
+    def "benchmark overrides are copied to the JMH task"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.repositories {
+            mavenCentral()
+        }
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        when:
+        project.jmh {
+            benchmarkOverrides {
+                macro {
+                    include = '.*Macro.*'
+                    timeOnIteration = '10s'
+                }
+            }
+        }
+        def task = project.tasks.findByName('jmh') as JMHTask
+        project.jmh.benchmarkOverrides.create('slow') { include = '.*Slow.*' }
+
+        then:
+        task.benchmarkOverrides*.name == ['macro', 'slow']
+        task.benchmarkOverrides.getByName('macro').timeOnIteration.get() == '10s'
+        task.benchmarkOverrides.getByName('slow').include.get() == '.*Slow.*'
+    }
+
+    def "measurement iterations are appended to partial results as JMH prints them"() {
+        given:
+        def partialResults = new File(File.createTempDir(), 'partial-results.jsonl')
+        def output = new ByteArrayOutputStream()
+        def stream = new JmhProgressStream(output, org.gradle.api.logging.Logging.getLogger(JMHPluginTest), partialResults)
+        def jmhOutput = """# Benchmark mode: Average time, time/op
+# Benchmark: a.B.m
+# Parameters: (size = 10)
+
+# Run progress: 50.00% complete, ETA 00:00:10
+# Fork: 2 of 2
+# Warmup Iteration   1: 12.5 ns/op
+Iteration   1: 10.5 ns/op
+
+# Benchmark mode: Sampling time
+# Benchmark: a.B.m
+# Parameters: (size = 10)
+
+# Run progress: 75.00% complete, ETA 00:00:05
+# Fork: 1 of 1
+Iteration   1: 12.3 \u00b1(99.9%) 0.4 us/op
+                 m.p0.00:   11.0 us/op
+"""
+
+        when: 'the output is written in chunks which split lines'
+        def bytes = jmhOutput.getBytes('UTF-8')
+        for (int i = 0; i < bytes.length; i += 7) {
+            stream.write(bytes, i, Math.min(7, bytes.length - i))
+        }
+
+        then:
+        output.toString('UTF-8') == jmhOutput
+        partialResults.readLines().collect { new groovy.json.JsonSlurper().parseText(it) } == [
+                [benchmark: 'a.B.m', mode: 'avgt', params: [size: '10'], fork: 2, iteration: 1, score: 10.5, scoreUnit: 'ns/op'],
+                [benchmark: 'a.B.m', mode: 'sample', params: [size: '10'], fork: 1, iteration: 1, score: 12.3, scoreUnit: 'us/op']
+        ]
+
+        cleanup:
+        stream.close()
+    }
+
+    def "completed invocations are checkpointed until the benchmarks change"() {
+        given:
+        def dir = File.createTempDir()
+        def benchmarkList = new File(dir, 'BenchmarkList')
+        benchmarkList.text = 'JMH S 3 a.B S 27 a.jmh_generated.B_m_jmhTest S 1 m S 10 Throughput E A 1 1 1 E E E E E E E E E E E E E E E E E'
+        def classesDir = new File(dir, 'classes')
+        def benchmarkClass = new File(classesDir, 'a/B.class')
+        benchmarkClass.parentFile.mkdirs()
+        benchmarkClass.bytes = BenchmarkCheckpoint.getResourceAsStream('BenchmarkCheckpoint.class').bytes
+        def checkpoint = new BenchmarkCheckpoint(new File(dir, 'checkpoint'), benchmarkList, [classesDir])
+        def key = checkpoint.key(['^a.B.m$', '-f', '1'])
+
+        when:
+        checkpoint.directory(key).mkdirs()
+        checkpoint.completed(key, 'a.B.m')
+        def resumed = new BenchmarkCheckpoint(new File(dir, 'checkpoint'), benchmarkList, [classesDir])
+
+        then:
+        resumed.isCompleted(key)
+        !resumed.isCompleted(resumed.key(['^a.B.m$', '-f', '2']))
+
+        when: 'the code of the benchmark changes'
+        benchmarkClass.bytes = ClassDependencies.getResourceAsStream('ClassDependencies.class').bytes
+
+        then:
+        new BenchmarkCheckpoint(new File(dir, 'checkpoint'), benchmarkList, [classesDir]).key(['^a.B.m$', '-f', '1']) != key
+
+        when: 'the benchmarks change'
+        benchmarkClass.bytes = BenchmarkCheckpoint.getResourceAsStream('BenchmarkCheckpoint.class').bytes
+        benchmarkList << '\nJMH S 3 a.B S 27 a.jmh_generated.B_n_jmhTest S 1 n S 10 Throughput E A 1 1 1 E E E E E E E E E E E E E E E E E'
+
+        then:
+        new BenchmarkCheckpoint(new File(dir, 'checkpoint'), benchmarkList, [classesDir]).key(['^a.B.m$', '-f', '1']) != key
+    }
+
+    def "secondary metrics of profilers are summarized per benchmark"() {
+        given:
+        def dir = File.createTempDir()
+        def results = new File(dir, 'results.json')
+        results.text = '''[
+            {"benchmark": "a.B.m", "mode": "avgt", "params": {"size": "10"}, "primaryMetric": {"score": 10.5, "scoreUnit": "ns/op"},
+             "secondaryMetrics": {"gc.alloc.rate": {"score": 1200.25, "scoreUnit": "MB/sec"}, "cycles": {"score": 35.1, "scoreUnit": "#/op"}}},
+            {"benchmark": "a.B.n", "mode": "avgt", "primaryMetric": {"score": 100.0, "scoreUnit": "ns/op"}}
+        ]'''
+        def summary = new File(dir, 'results-profilers.txt')
+
+        when:
+        JmhProfilers.writeSummary(results, summary)
+
+        then:
+        summary.readLines() == [
+                'Benchmark               Score (ns/op)  cycles (#/op)  gc.alloc.rate (MB/sec)',
+                'a.B.m {size=10} (avgt)         10.500         35.100                1200.250',
+                'a.B.n (avgt)                  100.000',
+        ]
+    }
+
+    def "unknown profilers are rejected when the project is evaluated"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        when:
+        project.jmh {
+            profilers = ['gc', 'perfnorm:events=cycles', 'org.acme.MyProfiler', 'gcc']
+        }
+        project.evaluate()
+
+        then:
+        def e = thrown(ProjectConfigurationException)
+        e.cause instanceof InvalidUserDataException
+        e.cause.message.startsWith("Unknown JMH profiler 'gcc'")
+    }
+
+    def "profiler classes missing from the classpath are reported"() {
+        given:
+        File classes = File.createTempDir()
+        new File(classes, 'org/acme').mkdirs()
+        new File(classes, 'org/acme/MyProfiler.class').bytes = new byte[0]
+
+        expect:
+        JmhProfilers.missingProfilerClasses(['gc', 'org.acme.MyProfiler', 'org.acme.OtherProfiler:x=1'], [classes]) == ['org.acme.OtherProfiler']
+
+        cleanup:
+        classes.deleteDir()
+    }
+
+    def "benchmarks allocating over their budget are reported"() {
+        given:
+        def results = [
+                [benchmark: 'a.Serializer.write', mode: 'thrpt', secondaryMetrics: ['gc.alloc.rate.norm': [score: 0.004d]]],
+                [benchmark: 'a.Serializer.read', mode: 'thrpt', params: [size: '10'], secondaryMetrics: ['gc.alloc.rate.norm': [score: 24.0d]]],
+                [benchmark: 'a.Other.run', mode: 'avgt', secondaryMetrics: ['gc.alloc.rate.norm': [score: 1000d]]],
+                [benchmark: 'a.Serializer.flush', mode: 'avgt'],
+        ]
+
+        expect:
+        AllocationBudgets.violations(results, ['.*Serializer.*': 32, '.*read': 0]) == [
+                'a.Serializer.read {size=10} (thrpt): allocates 24.0 B/op, over the budget of 0 B/op',
+                'a.Serializer.flush (avgt): no gc.alloc.rate.norm metric, the gc profiler must be enabled',
+        ]
+    }
+
+    def "async-profiler is resolved from its distribution directory"() {
+        given:
+        def distribution = File.createTempDir()
+        def library = new File(distribution, 'lib/libasyncProfiler.so')
+        library.parentFile.mkdirs()
+        library.text = ''
+        def profiles = new File(distribution, 'profiles')
+
+        expect:
+        AsyncProfiler.resolveLibrary(distribution) == library
+        AsyncProfiler.resolveLibrary(library) == library
+        AsyncProfiler.profilerOption(library, 'alloc', 524288, 'flamegraph, collapsed', profiles) ==
+                "async:libPath=${library.absolutePath};event=alloc;interval=524288;output=flamegraph,collapsed;dir=${profiles.absolutePath}"
+
+        when:
+        AsyncProfiler.profilerOption(library, 'cache-misses', null, 'flamegraph', profiles)
+
+        then:
+        def e = thrown(InvalidUserDataException)
+        e.message.startsWith("Unsupported async-profiler event 'cache-misses'")
+    }
+
+    def "JIT diagnostics report failed inlining, deoptimizations and OSR-only compilations"() {
+        given:
+        def dir = File.createTempDir()
+        def output = new File(dir, 'output.txt')
+        output.text = """# Benchmark mode: Average time, time/op
+# Benchmark: a.B.m
+# Parameters: (size = 10)
+
+# Fork: 1 of 1
+    120   35       3       a.B::m (40 bytes)
+                              @ 1   java.lang.Object::<init> (1 bytes)   inline (hot)
+                              @ 12   a.C::foo (400 bytes)   hot method too big
+                              @ 20   java.lang.Math::sqrt (5 bytes)   (intrinsic)
+    130   40 %     4       a.B::loop @ 12 (100 bytes)
+    200   35       3       a.B::m (40 bytes)   made not entrant
+    210   36       4       a.B::m (40 bytes)
+                              @ 12   a.C::foo (400 bytes)   hot method too big
+Iteration   1: 10.5 ns/op
+"""
+
+        when:
+        def diagnostics = JitDiagnostics.parse([output])
+        def report = diagnostics.write(new File(dir, 'jit'))
+
+        then:
+        report.readLines() == [
+                'a.B.m {size=10} (avgt)',
+                '  Failed inlining:',
+                '    a.C::foo (400 bytes) into a.B::m: hot method too big (2 times)',
+                '  Deoptimizations:',
+                '    a.B::m: made not entrant',
+                '  OSR-only compilations:',
+                '    a.B::loop',
+                '',
+        ]
+        new File(dir, 'jit/a.B.m-avgt-size-10.log').readLines().size() == 9
+    }
+
+    def "Flight Recorder recordings are summarized per benchmark"() {
+        given:
+        def dir = File.createTempDir()
+        def benchmarkDir = new File(dir, 'a.B.m-Throughput')
+        benchmarkDir.mkdirs()
+        def recording = new jdk.jfr.Recording()
+        recording.enable('jdk.GarbageCollection')
+        recording.start()
+        System.gc()
+        recording.stop()
+        recording.dump(new File(benchmarkDir, 'profile.jfr').toPath())
+
+        when:
+        def summarized = JfrSummary.summarizeAll(dir)
+
+        then:
+        summarized == 1
+        def summary = new File(benchmarkDir, JfrSummary.SUMMARY_FILE).readLines()
+        summary[0].startsWith('GC pauses: ')
+        !summary[0].startsWith('GC pauses: 0,')
+        summary.containsAll(['Allocation by class:', 'Lock contention:', 'Top CPU frames:'])
+        JfrSummary.typeName('[[Ljava.lang.String;') == 'java.lang.String[][]'
+        JfrSummary.typeName('[B') == 'byte[]'
+
+        cleanup:
+        recording?.close()
+    }
+
+    def "a JMH task is registered for each variant of the matrix"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        when:
+        project.jmh {
+            resultFormat = 'json'
+            jvmArgsAppend = ['-Xmx1g']
+            matrix {
+                javaVersions = [17, 21]
+                jvmFlagSets = [g1: ['-XX:+UseG1GC'], zgc: ['-XX:+UseZGC']]
+            }
+        }
+        project.evaluate()
+
+        then:
+        ['jmhJava17G1', 'jmhJava17Zgc', 'jmhJava21G1', 'jmhJava21Zgc'].every { project.tasks.findByName(it) instanceof JMHTask }
+        def task = project.tasks.getByName('jmhJava21Zgc') as JMHTask
+        task.jvmArgsAppend.get() == ['-Xmx1g', '-XX:+UseZGC']
+        task.resultsFile.get().asFile == project.file('build/results/jmhJava21Zgc/results.json')
+        def matrix = project.tasks.getByName('jmhMatrix') as JmhMatrixTask
+        matrix.variants.get() as List == ['java17-g1', 'java17-zgc', 'java21-g1', 'java21-zgc']
+        matrix.resultsFiles.get()['java21-zgc'].asFile == task.resultsFile.get().asFile
+    }
+
+    def "the matrix task is registered before the project is evaluated and the matrix is final afterwards"() {
+        given:
+        Project project = ProjectBuilder.builder().build()
+        project.apply plugin: 'java'
+        project.apply plugin: 'me.champeau.jmh'
+
+        expect:
+        project.tasks.findByName('jmhMatrix') instanceof JmhMatrixTask
+
+        when:
+        project.jmh.matrix.javaVersions = [17]
+        project.evaluate()
+        project.jmh.matrix.javaVersions = [21]
+
+        then:
+        project.tasks.findByName('jmhJava17') instanceof JMHTask
+        thrown(IllegalStateException)
+    }
+
+    def "matrix results are compared with the first variant"() {
+        given:
+        def result = { double score -> [benchmark: 'a.B.m', mode: 'thrpt', primaryMetric: [score: score, scoreError: 1.5d, scoreUnit: 'ops/ms']] }
+
+        expect:
+        JmhMatrixTask.report(['java17': [result(100d)], 'java21': [result(110d)]]).readLines() == [
+                'Benchmark      Unit             java17                     java21',
+                'a.B.m (thrpt)  ops/ms  100.000 \u00b1 1.500  110.000 \u00b1 1.500 (+10.00%)',
+        ]
+    }
+
+    def "pairwise sweeps cover every pair of parameter values"() {
+        given:
+        def space = [a: ['1', '2', '3'], b: ['x', 'y', 'z'], c: ['true', 'false'], d: ['10', '20']]
+        def sweep = new ParameterSweep(space)
+
+        when:
+        def configurations = sweep.pairwise()
+
+        then:
+        configurations.size() < 3 * 3 * 2 * 2
+        def names = space.keySet() as List
+        (0..<names.size()).every { i ->
+            ((i + 1)..<names.size()).every { j ->
+                [space[names[i]], space[names[j]]].combinations().every { a, b ->
+                    configurations.any { it[names[i]] == a && it[names[j]] == b }
+                }
+            }
+        }
+    }
+
+    def "sweeps are refined around the worst configuration of each benchmark"() {
+        given:
+        def sweep = new ParameterSweep([size: ['10', '100', '1000'], threads: ['1', '2', '4']])
+        def result = { String size, String threads, double score ->
+            [benchmark: 'a.B.m', mode: 'thrpt', params: [size: size, threads: threads], primaryMetric: [score: score, scoreUnit: 'ops/s']]
+        }
+
+        when:
+        def worst = sweep.worstConfigurations([result('10', '1', 10d), result('100', '2', 5d), result('1000', '4', 50d)])
+
+        then:
+        worst == [[size: '100', threads: '2']]
+        sweep.neighbours(worst[0]) == [
+                [size: '10', threads: '2'], [size: '1000', threads: '2'], [size: '100', threads: '1'], [size: '100', threads: '4']
+        ]
+        sweep.batches([[size: '10', threads: '1'], [size: '100', threads: '1'], [size: '10', threads: '4']]) == [
+                [size: ['10', '100'], threads: ['1']], [size: ['10'], threads: ['4']]
+        ]
+        sweep.latinHypercube(3, 0).collect { it.size }.sort() == ['10', '100', '1000']
+    }
+
+    def "the Universal Scalability Law is fitted to the throughput at each thread count"() {
+        given:
+        def sigma = 0.05d
+        def kappa = 0.002d
+        def results = [1, 2, 4, 8, 16].collect { int n ->
+            [benchmark: 'a.Queue.offer', mode: 'thrpt', threads: n,
+             primaryMetric: [score: 1000 * n / (1 + sigma * (n - 1) + kappa * n * (n - 1)), scoreUnit: 'ops/ms']]
+        }
+
+        when:
+        def curve = ScalabilityCurve.fromResults(results)['a.Queue.offer (thrpt)']
+
+        then:
+        Math.abs(curve.sigma - sigma) < 1e-9
+        Math.abs(curve.kappa - kappa) < 1e-9
+        Math.round(curve.peakThreads()) == 22
+        curve.speedup(1) == 1d
+        Math.abs(curve.efficiency(16) - 1 / (1 + sigma * 15 + kappa * 16 * 15)) < 1e-9
+        ScalabilityCurve.defaultThreads(12) == [1, 2, 4, 8, 12]
+    }
+
+    def "benchmark names are read from the benchmark list without depending on the JMH version"() {
+        given:
+        def benchmarkList = new File(File.createTempDir(), 'BenchmarkList')
+        benchmarkList.text = '''JMH S 7 a.Bench S 37 a.jmh_generated.Bench_measure_jmhTest S 7 measure S 10 Throughput E A 1 1 1 E E E E E E E E E E E E E E E E E
+JMH S 7 a.Bench S 35 a.jmh_generated.Bench_other_jmhTest S 5 other S 11 AverageTime E A 1 1 1 E E E E E E E E E E E E E E E E E E E E
+'''
+
+        expect:
+        BenchmarkListFile.readBenchmarks(benchmarkList) == ['a.Bench.measure', 'a.Bench.other']
+
+        when:
+        benchmarkList.text = 'a.Bench,a.jmh_generated.Bench_measure_jmhTest,measure'
+        BenchmarkListFile.readBenchmarks(benchmarkList)
+
+        then:
+        def e = thrown(GradleException)
+        e.message.contains("try setting jmhVersion to ${BuildConfig.JMH_VERSION}")
+    }
+
+    def "the benchmarks of a shard are matched by a single include"() {
+        when:
+        def includes = BenchmarkShards.exactIncludes(['a.B.m', 'a.B.n', 'a.C.m', 'a.D$E.m$1'])
+
+        then:
+        includes == ['^(?:\\Qa.B\\E\\.(?:m|n)|\\Qa.C\\E\\.m|\\Qa.D$E\\E\\.m\\$1)$']
+        ['a.B.m', 'a.B.n', 'a.C.m', 'a.D$E.m$1'].every { it =~ includes[0] }
+        ['a.B.mm', 'a.C.n', 'xa.B.m', 'a.BxC.m'].every { !(it =~ includes[0]) }
+    }
+
     @Unroll
     def "failOnError #value generates -foe #expected in JMH arguments"() {
         given: